@@ -0,0 +1,58 @@
+package org.konica.interview;
+
+import java.util.Random;
+
+/** Represents generated text for benchmarks
+ *
+ * Text resembles prose: words follow Zipf-like distribution over fixed
+ * vocabulary, sentences end with punctuation and paragraphs are separated
+ * by empty lines. The same seed always gives the same text.
+ */
+public class Corpus {
+    private static final int VOCABULARY = 20000;
+
+    /**
+     * @param length length of text in characters
+     * @param seed seed of generator
+     * @return generated text
+     */
+    public static String generate(int length, long seed) {
+        Random random = new Random(seed);
+        String[] words = vocabulary(random);
+        StringBuilder text = new StringBuilder(length + 64);
+
+        int sentence = 0;
+        while (text.length() < length) {
+            // cubed uniform number prefers small indexes, i.e. common words
+            double u = random.nextDouble();
+            text.append(words[(int) (u * u * u * VOCABULARY)]);
+
+            if (random.nextInt(12) == 0) {
+                text.append(". ");
+                if (++sentence % 5 == 0) {
+                    text.append("\n\n");
+                }
+            } else if (random.nextInt(10) == 0) {
+                text.append(", ");
+            } else {
+                text.append(' ');
+            }
+        }
+
+        text.setLength(length);
+        return text.toString();
+    }
+
+    private static String[] vocabulary(Random random) {
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            int length = 2 + random.nextInt(9);
+            char[] word = new char[length];
+            for (int j = 0; j < length; j++) {
+                word[j] = (char) ('a' + random.nextInt(26));
+            }
+            words[i] = new String(word);
+        }
+        return words;
+    }
+}
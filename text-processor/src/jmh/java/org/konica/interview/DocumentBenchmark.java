@@ -0,0 +1,79 @@
+package org.konica.interview;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Represents benchmark of statistics of Document
+ *
+ * Every invocation creates new Document from the same content, so nothing
+ * computed by previous invocation is reused. Repeated benchmarks read one
+ * Document whose statistics were already derived, as repeated GET of cached
+ * Document does. Parallel processing is disabled, it is measured by
+ * ParallelStatisticsBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DocumentBenchmark {
+    @Param({"1024", "65536", "1048576", "16777216", "104857600"})
+    public int length;
+
+    private String content;
+    private Document derived;
+
+    @Setup
+    public void setUp() {
+        content = Corpus.generate(length, 42);
+        ParallelStatistics.setThreshold(0);
+
+        derived = new Document(content);
+        derived.parseStatistics();
+    }
+
+    @Benchmark
+    public HashMap<String, Long> parseWordFrequency() {
+        return new Document(content).parseWordFrequency();
+    }
+
+    @Benchmark
+    public HashMap<String, Long> parseTopWords() {
+        return new Document(content).parseWordFrequency(20, 1);
+    }
+
+    @Benchmark
+    public Integer parseParagraphAvgLength() {
+        return new Document(content).parseParagraphAvgLength();
+    }
+
+    @Benchmark
+    public Document parseStatistics() {
+        Document document = new Document(content);
+        document.parseStatistics();
+        return document;
+    }
+
+    @Benchmark
+    public HashMap<String, Long> repeatedWordFrequency() {
+        return derived.parseWordFrequency();
+    }
+
+    @Benchmark
+    public HashMap<String, Long> repeatedTopWords() {
+        return derived.parseWordFrequency(20, 1);
+    }
+
+    @Benchmark
+    public ArrayList<String> splitByParagraphs() {
+        return new Document(content).getParagraphs();
+    }
+}
@@ -0,0 +1,106 @@
+package org.konica.interview;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/** Represents benchmark of DocumentCache under contention
+ *
+ * Cache is filled with small documents and read by 1, 4 and 16 threads.
+ * Mixed groups store documents while other threads read. Stored documents
+ * evict older ones, evicted documents are dropped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DocumentCacheBenchmark {
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private DocumentCache cache;
+    private UUID[] keys;
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        document = new Document(Corpus.generate(1024, 42));
+        long weight = document.estimateSize();
+
+        cache = new DocumentCache(60000, DocumentCache.DEFAULT_TICK, weight * entries, false, (uuid, d) -> { });
+        keys = new UUID[entries];
+        for (int i = 0; i < entries; i++) {
+            keys[i] = UUID.randomUUID();
+            cache.store(keys[i], document);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    private Document get() {
+        return cache.get(keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+    }
+
+    private void store() {
+        cache.store(keys[ThreadLocalRandom.current().nextInt(keys.length)], document);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Document get1() {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Document get4() {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Document get16() {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void store1() {
+        store();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void store4() {
+        store();
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(7)
+    public Document readMostlyGet() {
+        return get();
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public void readMostlyStore() {
+        store();
+    }
+}
@@ -0,0 +1,56 @@
+package org.konica.interview;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Represents benchmark of statistics computed on fork/join pool
+ *
+ * Parallelism 1 processes text sequentially, higher values give the
+ * speedup curve of ParallelStatistics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelStatisticsBenchmark {
+    @Param({"16777216", "104857600"})
+    public int length;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private String content;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        content = Corpus.generate(length, 42);
+        pool = new ForkJoinPool(parallelism);
+        ParallelStatistics.setThreshold(parallelism == 1 ? 0 : 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        ParallelStatistics.setThreshold(ParallelStatistics.DEFAULT_THRESHOLD);
+    }
+
+    @Benchmark
+    public DocumentStatistics computeStatistics() {
+        return ParallelStatistics.compute(content, true, pool);
+    }
+
+    @Benchmark
+    public DocumentStatistics computeParagraphStatistics() {
+        return ParallelStatistics.compute(content, false, pool);
+    }
+}
@@ -0,0 +1,73 @@
+package org.konica.interview;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Represents benchmark of JSON responses
+ *
+ * Document holds only computed statistics, so only serialization is measured.
+ * Responses are streamed to one reused buffer, as they are streamed to output
+ * stream of servlet. Buffer grows only in the first invocations, so allocation
+ * measured by gc profiler is allocation of serialization itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+    @Param({"1024", "1048576", "16777216"})
+    public int length;
+
+    private TextProcessor textProcessor;
+    private Document document;
+    private ByteArrayOutputStream output;
+
+    @Setup
+    public void setUp() throws IOException {
+        textProcessor = new BasicTextProcessor(new TextExtractor("http://localhost:9998/tika"), null, 1,
+                new BoundedExecutor("parser", 1, 1, false));
+
+        Document parsed = new Document(Corpus.generate(length, 42));
+        parsed.parseStatistics();
+
+        document = new Document();
+        document.setParagraphCount(parsed.getParagraphCount());
+        document.setParagraphMaxLength(parsed.getParagraphMaxLength());
+        document.setParagraphMinLength(parsed.getParagraphMinLength());
+        document.setParagraphAvgLength(parsed.getParagraphAvgLength());
+        document.setWordFrequency(new LinkedHashMap<>(parsed.getWordFrequency()));
+
+        output = new ByteArrayOutputStream();
+    }
+
+    @Benchmark
+    public int parseAll() throws IOException {
+        output.reset();
+        textProcessor.writeAll(document, output);
+        return output.size();
+    }
+
+    @Benchmark
+    public int wordFrequency() throws IOException {
+        output.reset();
+        textProcessor.writeWordFrequency(document, Integer.MAX_VALUE, 1, output);
+        return output.size();
+    }
+
+    @Benchmark
+    public int topWords() throws IOException {
+        output.reset();
+        textProcessor.writeWordFrequency(document, 20, 1, output);
+        return output.size();
+    }
+}
@@ -0,0 +1,81 @@
+package org.konica.interview;
+
+import java.util.Arrays;
+
+/** Represents latencies of one route collected during load test
+ *
+ * Samples are kept in full and sorted once when test ends, so percentiles
+ * are exact. One sample takes 8 bytes, which is acceptable for runs of
+ * minutes.
+ */
+public class LatencyRecorder {
+    private final String route;
+    private long[] samples = new long[1024];
+    private int count;
+    private long errors;
+    private long rejected;
+
+    /**
+     * @param route name of route shown in report
+     */
+    public LatencyRecorder(String route) {
+        this.route = route;
+    }
+
+    /**
+     * Record request which finished.
+     *
+     * @param nanos latency in nanoseconds
+     * @param status HTTP status of response, negative when request failed without response
+     */
+    public synchronized void record(long nanos, int status) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+
+        if (status == 503) {
+            rejected++;
+        } else if (status < 200 || status >= 300) {
+            errors++;
+        }
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return recorded latencies in nanoseconds in ascending order
+     */
+    public synchronized long[] sorted() {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * @param sorted latencies in ascending order
+     * @param quantile quantile between 0 and 1
+     * @return latency in nanoseconds below which given share of requests finished, 0 when nothing was recorded
+     */
+    public static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
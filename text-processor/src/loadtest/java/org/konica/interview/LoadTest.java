@@ -0,0 +1,410 @@
+package org.konica.interview;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Represents end-to-end load test of text processor
+ *
+ * Text processor is started in this JVM against StubTika and embedded
+ * MongoDB (or given database) and requests are sent by fixed number of
+ * threads without think time. Each request picks route by weights of mix:
+ *
+ *   put    - PUT /document, statistics of uploaded document
+ *   post   - POST /document, stored documents are remembered for get and delete
+ *   get    - GET /document/:id of one of stored documents
+ *   delete - DELETE /document/:id of one of stored documents
+ *
+ * Remembered documents are picked at random. Get and delete fall back to
+ * post when picked document was already deleted or nothing is stored yet.
+ * Requests sent during warmup are not recorded. Report contains throughput and latency
+ * percentiles of each route, 503 responses of admission control are
+ * counted separately from errors.
+ */
+public class LoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final String[] ROUTES = {"put", "post", "get", "delete"};
+    private static final String DEFAULT_MIX = "put=30,post=20,get=40,delete=10";
+    private static final int DEFAULT_DURATION = 60;
+    private static final int DEFAULT_WARMUP = 10;
+    private static final int DEFAULT_CONCURRENCY = 16;
+    private static final int DEFAULT_DOCUMENT_SIZE = 65536;
+    private static final int DEFAULT_TIKA_LATENCY = 50;
+    private static final int DEFAULT_TIKA_PORT = 9997;
+    private static final int DEFAULT_PORT = 4599;
+    private static final String DEFAULT_CONTENT_TYPE = "text/pdf";
+    private static final int MAX_STORED = 100000;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final String base;
+    private final String contentType;
+    private final byte[] document;
+    private final int[] weights;
+    private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+    private final AtomicReferenceArray<String> stored = new AtomicReferenceArray<>(MAX_STORED);
+    private final AtomicLong storedCount = new AtomicLong();
+    private volatile boolean recording;
+    private volatile boolean running = true;
+
+    /**
+     * @param port port of text processor
+     * @param contentType content type of uploaded documents
+     * @param document uploaded document
+     * @param weights weights of routes in order of ROUTES
+     */
+    public LoadTest(int port, String contentType, byte[] document, int[] weights) {
+        this.base = "http://localhost:" + port;
+        this.contentType = contentType;
+        this.document = document;
+        this.weights = weights;
+        for (String route : ROUTES) {
+            recorders.put(route, new LatencyRecorder(route));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = options();
+        CommandLine cmd = null;
+        try {
+            cmd = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            logger.error(e.getMessage());
+            new HelpFormatter().printHelp("loadTest [options] [-- text processor options]", options);
+            System.exit(1);
+        }
+
+        int duration = intOption(cmd, "duration", DEFAULT_DURATION);
+        int warmup = intOption(cmd, "warmup", DEFAULT_WARMUP);
+        int concurrency = intOption(cmd, "concurrency", DEFAULT_CONCURRENCY);
+        int size = intOption(cmd, "document-size", DEFAULT_DOCUMENT_SIZE);
+        int latency = intOption(cmd, "tika-latency", DEFAULT_TIKA_LATENCY);
+        int tikaPort = intOption(cmd, "tika-port", DEFAULT_TIKA_PORT);
+        int port = intOption(cmd, "port", DEFAULT_PORT);
+        String type = cmd.getOptionValue("content-type", DEFAULT_CONTENT_TYPE);
+        int[] weights = parseMix(cmd.getOptionValue("mix", DEFAULT_MIX));
+
+        String text = Corpus.generate(size, 42);
+        StubTika tika = new StubTika(tikaPort, text, latency, concurrency);
+        tika.start();
+
+        String database = cmd.getOptionValue("database");
+        if (database == null) {
+            int mongoPort = Network.getFreeServerPort();
+            MongodExecutable mongod = MongodStarter.getDefaultInstance().prepare(new MongodConfigBuilder()
+                    .version(Version.Main.PRODUCTION)
+                    .net(new Net("localhost", mongoPort, Network.localhostIsIPv6()))
+                    .build());
+            mongod.start();
+            database = "mongodb://localhost:" + mongoPort;
+        }
+
+        List<String> serverArgs = new ArrayList<>(Arrays.asList("-t", tika.url(), "-db", database, "-p", Integer.toString(port)));
+        serverArgs.addAll(cmd.getArgList());
+        logger.info("starting text processor with " + serverArgs);
+        Main.main(serverArgs.toArray(new String[0]));
+        spark.Spark.awaitInitialization();
+
+        LoadTest test = new LoadTest(port, type, text.getBytes(StandardCharsets.UTF_8), weights);
+        ObjectNode report = test.run(concurrency, warmup, duration);
+        report.put("Concurrency", concurrency);
+        report.put("DocumentSize", size);
+        report.put("TikaLatency", latency);
+        report.put("ContentType", type);
+
+        System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        String output = cmd.getOptionValue("output");
+        if (output != null) {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(new File(output), report);
+        }
+
+        // embedded MongoDB is stopped by its own shutdown hook
+        spark.Spark.stop();
+        tika.stop();
+        System.exit(0);
+    }
+
+    /**
+     * Send requests from given number of threads, first for warmup and then for measured duration.
+     *
+     * @param concurrency number of threads sending requests
+     * @param warmup seconds for which requests are not recorded
+     * @param duration seconds for which requests are recorded
+     * @return report with throughput and latency percentiles of each route
+     * @throws InterruptedException
+     */
+    public ObjectNode run(int concurrency, int warmup, int duration) throws InterruptedException {
+        Thread[] workers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Thread(this::work, "load-" + i);
+            workers[i].start();
+        }
+
+        TimeUnit.SECONDS.sleep(warmup);
+        recording = true;
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(duration);
+        recording = false;
+        long elapsed = System.nanoTime() - start;
+
+        running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return report(elapsed);
+    }
+
+    private void work() {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+
+        while (running) {
+            int pick = ThreadLocalRandom.current().nextInt(total);
+            int route = 0;
+            while (pick >= weights[route]) {
+                pick -= weights[route++];
+            }
+
+            try {
+                send(ROUTES[route]);
+            } catch (IOException e) {
+                logger.debug(ROUTES[route] + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void send(String route) throws IOException {
+        String id = null;
+        if (route.equals("get") || route.equals("delete")) {
+            int slot = randomSlot();
+            if (slot >= 0) {
+                id = route.equals("get") ? stored.get(slot) : stored.getAndSet(slot, null);
+            }
+        }
+        if (id == null && (route.equals("get") || route.equals("delete"))) {
+            route = "post";
+        }
+
+        long start = System.nanoTime();
+        int status = -1;
+        String body = null;
+        try {
+            switch (route) {
+                case "put":
+                    status = request("PUT", "/document", document);
+                    break;
+                case "post":
+                    HttpURLConnection post = open("POST", "/document", document);
+                    status = post.getResponseCode();
+                    body = read(post);
+                    break;
+                case "get":
+                    status = request("GET", "/document/" + id, null);
+                    break;
+                default:
+                    status = request("DELETE", "/document/" + id, null);
+                    break;
+            }
+        } finally {
+            if (recording) {
+                recorders.get(route).record(System.nanoTime() - start, status);
+            }
+        }
+
+        if (body != null && status == 200) {
+            // when all slots are used the oldest documents are forgotten, they stay in database
+            int slot = (int) (storedCount.getAndIncrement() % MAX_STORED);
+            stored.set(slot, mapper.readTree(body).get(TextProcessor.DOCUMENT_UUID).asText());
+        }
+    }
+
+    /**
+     * @return random slot of remembered documents, -1 when nothing was stored yet
+     */
+    private int randomSlot() {
+        long count = Math.min(storedCount.get(), MAX_STORED);
+        return count == 0 ? -1 : ThreadLocalRandom.current().nextInt((int) count);
+    }
+
+    private int request(String method, String path, byte[] body) throws IOException {
+        HttpURLConnection connection = open(method, path, body);
+        int status = connection.getResponseCode();
+        read(connection);
+        return status;
+    }
+
+    private HttpURLConnection open(String method, String path, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", contentType);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Read response to the end, so connection is reused by following request.
+     *
+     * @param connection connection with response
+     * @return body of response
+     * @throws IOException
+     */
+    private static String read(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in == null) {
+            return "";
+        }
+        StringBuilder body = new StringBuilder();
+        byte[] buffer = new byte[8192];
+        try (InputStream stream = in) {
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                body.append(new String(buffer, 0, n, StandardCharsets.UTF_8));
+            }
+        }
+        return body.toString();
+    }
+
+    private ObjectNode report(long elapsed) {
+        double seconds = elapsed / 1e9;
+        ObjectNode report = mapper.createObjectNode();
+        report.put("Duration", seconds);
+        ArrayNode routes = report.putArray("Routes");
+
+        for (LatencyRecorder recorder : recorders.values()) {
+            long[] sorted = recorder.sorted();
+            ObjectNode node = routes.addObject();
+            node.put("Route", recorder.getRoute());
+            node.put("Count", sorted.length);
+            node.put("Errors", recorder.getErrors());
+            node.put("Rejected", recorder.getRejected());
+            node.put("Throughput", sorted.length / seconds);
+            node.put("P50", millis(LatencyRecorder.percentile(sorted, 0.5)));
+            node.put("P99", millis(LatencyRecorder.percentile(sorted, 0.99)));
+            node.put("P999", millis(LatencyRecorder.percentile(sorted, 0.999)));
+            node.put("Max", millis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+        }
+        return report;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * @param mix weights of routes, e.g. "put=30,post=20,get=40,delete=10", missing routes get 0
+     * @return weights in order of ROUTES
+     */
+    static int[] parseMix(String mix) {
+        int[] weights = new int[ROUTES.length];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            int route = Arrays.asList(ROUTES).indexOf(pair[0].trim());
+            if (pair.length != 2 || route < 0) {
+                throw new IllegalArgumentException("Invalid mix: " + mix);
+            }
+            weights[route] = Integer.parseInt(pair[1].trim());
+        }
+        if (Arrays.stream(weights).sum() <= 0) {
+            throw new IllegalArgumentException("Invalid mix: " + mix);
+        }
+        return weights;
+    }
+
+    private static int intOption(CommandLine cmd, String name, int defaultValue) {
+        String value = cmd.getOptionValue(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static Options options() {
+        Options options = new Options();
+
+        Option duration = new Option("d", "duration", true, "Measured time in seconds. Default: " + DEFAULT_DURATION);
+        duration.setRequired(false);
+        options.addOption(duration);
+
+        Option warmup = new Option("wu", "warmup", true, "Time in seconds before measurement starts. Default: " + DEFAULT_WARMUP);
+        warmup.setRequired(false);
+        options.addOption(warmup);
+
+        Option concurrency = new Option("c", "concurrency", true, "Number of threads sending requests. Default: " + DEFAULT_CONCURRENCY);
+        concurrency.setRequired(false);
+        options.addOption(concurrency);
+
+        Option mix = new Option("m", "mix", true, "Weights of put, post, get and delete requests. Default: " + DEFAULT_MIX);
+        mix.setRequired(false);
+        options.addOption(mix);
+
+        Option size = new Option("s", "document-size", true, "Length in characters of text returned by stub Tika. Default: " + DEFAULT_DOCUMENT_SIZE);
+        size.setRequired(false);
+        options.addOption(size);
+
+        Option type = new Option("ct", "content-type", true, "Content type of uploaded documents, text/plain bypasses Tika. Default: " + DEFAULT_CONTENT_TYPE);
+        type.setRequired(false);
+        options.addOption(type);
+
+        Option latency = new Option("tl", "tika-latency", true, "Time in milliseconds stub Tika waits before response. Default: " + DEFAULT_TIKA_LATENCY);
+        latency.setRequired(false);
+        options.addOption(latency);
+
+        Option tikaPort = new Option("tp", "tika-port", true, "Listening port of stub Tika. Default: " + DEFAULT_TIKA_PORT);
+        tikaPort.setRequired(false);
+        options.addOption(tikaPort);
+
+        Option port = new Option("p", "port", true, "Listening port of text processor. Default: " + DEFAULT_PORT);
+        port.setRequired(false);
+        options.addOption(port);
+
+        Option database = new Option("db", "database", true, "URL of Database server. Default: embedded MongoDB");
+        database.setRequired(false);
+        options.addOption(database);
+
+        Option output = new Option("o", "output", true, "File to which report is written as JSON");
+        output.setRequired(false);
+        options.addOption(output);
+
+        return options;
+    }
+}
@@ -0,0 +1,80 @@
+package org.konica.interview;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Represents stand-in for Tika server
+ *
+ * Every request is answered with the same text after configured latency,
+ * whatever document was uploaded. Uploaded document is always read to the
+ * end, so connections of TextExtractor are kept alive as with real Tika.
+ */
+public class StubTika {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] text;
+    private final int latency;
+
+    /**
+     * @param port listening port
+     * @param text text returned for every document
+     * @param latency time in milliseconds before response is sent
+     * @param threads number of concurrently served requests
+     * @throws IOException
+     */
+    public StubTika(int port, String text, int latency, int threads) throws IOException {
+        this.text = text.getBytes(StandardCharsets.UTF_8);
+        this.latency = latency;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), threads);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return URL which is passed to text processor as Tika server
+     */
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort() + "/tika";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read(buffer) != -1) {
+                // document is not needed, only connection has to be drained
+            }
+        }
+
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(200, text.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(text);
+        }
+    }
+}
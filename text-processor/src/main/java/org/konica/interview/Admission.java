@@ -0,0 +1,96 @@
+package org.konica.interview;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import spark.Route;
+
+/** Represents admission of requests to routes
+ *
+ * At most limit requests are handled at once. Request which comes when all of
+ * them are taken is refused right away by RejectedExecutionException, which is
+ * answered by 503, before its body is read.
+ *
+ * Jetty embedded in Spark 2.4 queues requests without bound when all threads of
+ * its pool are busy and its connector can not be replaced, so request can not be
+ * refused while it waits in that queue. Pool of Jetty is therefore larger than
+ * the limit and threads above the limit only refuse requests, so excess requests
+ * are answered by 503 instead of waiting in the queue of Jetty.
+ *
+ * On shutdown admission is closed, all new requests are refused and requests
+ * being handled can be waited for, so they finish before server is stopped.
+ *
+ * Admitted and refused requests are reported in Metrics.
+ */
+public class Admission {
+    private static final long CLOSE_POLL_INTERVAL = 10;
+
+    private final int limit;
+    private final AtomicInteger admitted;
+    private final LongAdder refused;
+
+    private volatile boolean closed;
+
+    /**
+     * @param limit maximum number of requests handled at once
+     */
+    public Admission(int limit) {
+        this.limit = limit;
+        this.admitted = new AtomicInteger();
+        this.refused = new LongAdder();
+
+        Metrics.gauge("text_processor_admitted_requests", "Requests being handled", "", admitted::get);
+        Metrics.counter("text_processor_refused_requests_total", "Requests refused because too many requests were handled", "", refused::sum);
+    }
+
+    /**
+     * Wrap route so that it is refused when too many requests are handled.
+     *
+     * @param route route to be admitted
+     * @return route which throws RejectedExecutionException when limit is reached
+     */
+    public Route admitted(Route route) {
+        return (request, response) -> {
+            if (admitted.incrementAndGet() > limit) {
+                admitted.decrementAndGet();
+                refused.increment();
+                throw new RejectedExecutionException("Too many requests, at most " + limit + " are handled at once");
+            }
+            if (closed) {
+                admitted.decrementAndGet();
+                refused.increment();
+                throw new RejectedExecutionException("Server is shutting down");
+            }
+
+            try {
+                return route.handle(request, response);
+            } finally {
+                admitted.decrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Refuse all new requests and wait until requests being handled finish.
+     *
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if all requests finished
+     */
+    public boolean close(long timeout) {
+        closed = true;
+        long deadline = System.currentTimeMillis() + timeout;
+        while (admitted.get() > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(CLOSE_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
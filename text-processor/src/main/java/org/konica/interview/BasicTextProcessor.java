@@ -1,7 +1,26 @@
 package org.konica.interview;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.ServletException;
+import javax.servlet.http.Part;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
@@ -13,19 +32,373 @@ import spark.Response;
  *  to extract statistics about text content of Document.
  *  Extraction is implemented in super class. This class
  *  deals only with how the Document is created.
+ *
+ *  Uploaded document is discarded after response is sent, so statistics
+ *  are computed while document is being received and content is not kept.
+ *  Statistics of small enough documents are kept in ResultCache, so the same
+ *  document uploaded again is not extracted nor parsed. Such upload is hashed
+ *  while it is spooled, only its first bytes are held in heap.
+ *
+ *  Many documents can be uploaded at once as multipart form or tar archive.
+ *  They are processed in parallel by pool of batch workers and result of each
+ *  of them is streamed back as one line of JSON as soon as it is finished.
+ *
+ *  @see ResultCache
+ *  @see TarReader
  */
 public class BasicTextProcessor extends TextProcessor {
+    public static final int DEFAULT_BATCH_WORKERS = 4;
+    public static final int MAX_BATCH_ITEM_BYTES = 64 * 1024 * 1024;
+    public static final long MAX_BATCH_BYTES = 256L * 1024 * 1024;
+    public static final int MAX_BATCH_ITEMS = 1000;
+    public static final int BATCH_PART_THRESHOLD = 1024 * 1024;
+    public static final int SPOOL_MEMORY_BYTES = 64 * 1024;
+
+    private static final String MULTIPART_CONFIG = "org.eclipse.jetty.multipartConfig";
+    private static final String MULTIPART = "multipart/form-data";
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String OCTET_STREAM = "application/octet-stream";
+
+    private ResultCache resultCache;
+    private BoundedExecutor batchExecutor;
+    private int batchWorkers;
+
     /**
      * Constructor for BasicTextProcessor. Initialize also TextProcessor.
      *
-     * @param textExtractorLocation URL of Tika server.
+     * @param textExtractor client of Tika server.
+     * @param resultCache cache of computed statistics, null if caching is disabled
+     * @param batchWorkers number of threads processing documents of batch uploads
+     * @param parser executor which parses text
      * @throws IOException
      */
-    public BasicTextProcessor(String textExtractorLocation) throws IOException {
-        super(textExtractorLocation);
+    public BasicTextProcessor(TextExtractor textExtractor, ResultCache resultCache, int batchWorkers, BoundedExecutor parser) throws IOException {
+        super(textExtractor, parser);
+        this.resultCache = resultCache;
+        this.batchWorkers = batchWorkers;
+        // parsing is bound by CPU, so it runs on platform threads
+        this.batchExecutor = new BoundedExecutor("batch-worker", batchWorkers, 4 * batchWorkers, false);
         logger = LoggerFactory.getLogger(BasicTextProcessor.class);
     }
 
+    /**
+     * Create Document holding statistics of uploaded document. Statistics are taken from
+     * ResultCache when the same document was uploaded before, otherwise they are computed
+     * and cached. Upload is hashed while it is spooled, so it is parsed from spool only when
+     * its statistics are not cached. Documents which can not be cached are streamed. Plain
+     * text is received by request thread and parsed chunk by chunk on parser executor, other
+     * documents are parsed by text extractor while Tika returns text.
+     *
+     * @param request contains document which was uploaded
+     * @param countWords whether word occurrences should be counted too
+     * @return Document which holds statistics of uploaded document
+     * @throws IOException
+     */
+    private Document receiveDocument(Request request, boolean countWords) throws IOException {
+        long length = request.raw().getContentLengthLong();
+        String type = request.headers("Content-Type");
+        // upload of unknown length is spooled until it turns out to be too long
+        if (resultCache == null || length > resultCache.getMaxDocumentBytes()) {
+            return streamDocument(request, countWords);
+        }
+
+        InputStream body = requestBody(request);
+        try (Spool spool = new Spool(SPOOL_MEMORY_BYTES)) {
+            MessageDigest digest = ResultCache.digest(type);
+            long start = RequestTiming.start();
+            boolean complete = spool.readFrom(new DigestInputStream(body, digest), resultCache.getMaxDocumentBytes());
+            RequestTiming.end(RequestTiming.RECEIVE, start);
+
+            if (!complete) {
+                // rest of upload is streamed after spooled bytes
+                try (InputStream input = new SequenceInputStream(spool.open(), body)) {
+                    return new Document(receiveStatistics(input, type, countWords));
+                }
+            }
+
+            String key = ResultCache.key(digest);
+            DocumentStatistics statistics = resultCache.get(key);
+            if (statistics == null) {
+                // words are always counted so that cached statistics can answer every request
+                try (InputStream input = spool.open()) {
+                    statistics = receiveStatistics(input, type, true);
+                }
+                resultCache.put(key, statistics);
+            }
+            return new Document(statistics);
+        }
+    }
+
+    /**
+     * Take statistics of document of batch from ResultCache or compute and cache them.
+     * Cached document is read twice, first to compute its key. Plain text is parsed by
+     * calling batch worker, other documents are extracted by Tika asynchronously, so
+     * batch worker does not wait for Tika.
+     *
+     * @param item uploaded document
+     * @param length length of document in bytes
+     * @param type type of document
+     * @return future finished statistics of document
+     * @throws IOException
+     */
+    private CompletableFuture<DocumentStatistics> batchStatistics(BatchItem item, long length, String type) throws IOException {
+        String key = null;
+        if (resultCache != null && resultCache.isCacheable(length)) {
+            try (InputStream input = item.open()) {
+                key = ResultCache.key(input, type);
+            }
+            DocumentStatistics cached = resultCache.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        CompletableFuture<DocumentStatistics> statistics;
+        if (TEXT_PLAIN.equals(type)) {
+            // words are always counted so that cached statistics can answer every request
+            try (InputStream input = item.open()) {
+                statistics = CompletableFuture.completedFuture(computeStatistics(input, type, true));
+            }
+        } else {
+            InputStream input = item.open();
+            statistics = extractStatistics(input, type).whenComplete((s, e) -> {
+                try {
+                    input.close();
+                } catch (IOException ex) {
+                    logger.warn("Closing batch document failed: " + ex.getMessage());
+                }
+            });
+        }
+
+        if (key == null) {
+            return statistics;
+        }
+        String cacheKey = key;
+        return statistics.thenApply(s -> {
+            resultCache.put(cacheKey, s);
+            return s;
+        });
+    }
+
+    /**
+     * Compute statistics of many documents uploaded at once, either as multipart form or
+     * as tar archive. Documents are processed in parallel and result of each of them is
+     * written as one line of JSON in order in which they are finished. Line holds index
+     * and name of document and either its statistics or error, failure of one document
+     * does not fail the others.
+     *
+     * Tar archive is read while documents are processed, at most twice as many documents
+     * as there are batch workers are held in memory. Type of document in archive is guessed
+     * from its extension.
+     *
+     * Multipart form is parsed by Jetty before its first document is processed. Parts longer
+     * than BATCH_PART_THRESHOLD are written to temporary files, so the heap holds only small
+     * parts, and each part is read from its own stream by batch worker. Form is limited to
+     * MAX_BATCH_BYTES and MAX_BATCH_ITEMS documents.
+     *
+     * @param request contains documents which were uploaded
+     * @param response receives results of documents
+     * @return empty body, results are written directly to response
+     * @throws IOException
+     */
+    public Object batch(Request request, Response response) throws IOException {
+        String type = request.headers("Content-Type");
+        response.type(NDJSON);
+        RequestTiming.attach(response);
+
+        OutputStream output = response.raw().getOutputStream();
+        Semaphore inFlight = new Semaphore(2 * batchWorkers);
+        AtomicInteger index = new AtomicInteger();
+        Collection<Part> parts = Collections.emptyList();
+
+        try {
+            if (type != null && type.startsWith(MULTIPART)) {
+                request.raw().setAttribute(MULTIPART_CONFIG, new MultipartConfigElement(System.getProperty("java.io.tmpdir"),
+                        MAX_BATCH_ITEM_BYTES, MAX_BATCH_BYTES, BATCH_PART_THRESHOLD));
+                parts = request.raw().getParts();
+                if (parts.size() > MAX_BATCH_ITEMS) {
+                    writeBatchLine(output, batchError(0, null, "Batch has more than " + MAX_BATCH_ITEMS + " documents"));
+                    return "";
+                }
+
+                for (Part part : parts) {
+                    String name = part.getSubmittedFileName() != null ? part.getSubmittedFileName() : part.getName();
+                    RequestTiming.received(request, part.getSize());
+                    submitBatchItem(index.getAndIncrement(), name, part::getInputStream, part.getSize(), part.getContentType(), output, inFlight);
+                }
+            } else {
+                TarReader tar = new TarReader(requestBody(request));
+                TarReader.Entry entry;
+                while ((entry = tar.next()) != null) {
+                    if (entry.getSize() > MAX_BATCH_ITEM_BYTES) {
+                        writeBatchLine(output, batchError(index.getAndIncrement(), entry.getName(), "Document is too large"));
+                        continue;
+                    }
+                    byte[] bytes = tar.read();
+                    submitBatchItem(index.getAndIncrement(), entry.getName(), () -> new ByteArrayInputStream(bytes), bytes.length,
+                            typeOf(entry.getName()), output, inFlight);
+                }
+            }
+        } catch (IOException | ServletException | IllegalStateException e) {
+            // Jetty reports form or part exceeding its limit by IllegalStateException
+            logger.error(request.uri() + " failed: " + e.getMessage());
+            writeBatchLine(output, batchError(index.get(), null, "Reading batch failed: " + e.getMessage()));
+        } finally {
+            inFlight.acquireUninterruptibly(2 * batchWorkers);
+            for (Part part : parts) {
+                part.delete();
+            }
+        }
+
+        return "";
+    }
+
+    /**
+     * Process document of batch on batch executor and write its result. Waits while
+     * too many documents of this batch are being processed. Document which is rejected
+     * because batch workers are overloaded is reported as error. Result of document
+     * extracted by Tika is written by thread which received it.
+     *
+     * @param index position of document in batch
+     * @param name name of document
+     * @param item content of document
+     * @param length length of document in bytes
+     * @param type type of document
+     * @param output stream of response
+     * @param inFlight permits for documents being processed
+     */
+    private void submitBatchItem(int index, String name, BatchItem item, long length, String type, OutputStream output, Semaphore inFlight) {
+        inFlight.acquireUninterruptibly();
+        try {
+            batchExecutor.execute(() -> {
+                CompletableFuture<DocumentStatistics> statistics;
+                try {
+                    statistics = batchStatistics(item, length, type);
+                } catch (Exception e) {
+                    statistics = new CompletableFuture<>();
+                    statistics.completeExceptionally(e);
+                }
+                statistics.whenComplete((s, e) -> writeBatchResult(index, name, s, e, output, inFlight));
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            try {
+                writeBatchLine(output, batchError(index, name, e.getMessage()));
+            } catch (IOException ex) {
+                logger.error("Writing result of batch document " + name + " failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write result of document of batch and release its permit.
+     *
+     * @param index position of document in batch
+     * @param name name of document
+     * @param statistics finished statistics of document, null if it failed
+     * @param error failure of document, null if it succeeded
+     * @param output stream of response
+     * @param inFlight permits for documents being processed
+     */
+    private void writeBatchResult(int index, String name, DocumentStatistics statistics, Throwable error, OutputStream output, Semaphore inFlight) {
+        String line;
+        if (error == null) {
+            try {
+                line = "{\"" + BATCH_INDEX + "\":" + index
+                        + ",\"" + BATCH_NAME + "\":" + mapper.writeValueAsString(name)
+                        + ",\"" + BATCH_STATISTICS + "\":" + parseAll(new Document(statistics)) + "}";
+            } catch (Exception e) {
+                line = batchError(index, name, e.getMessage());
+            }
+        } else {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            line = batchError(index, name, cause.getMessage());
+        }
+
+        try {
+            writeBatchLine(output, line);
+        } catch (IOException e) {
+            logger.error("Writing result of batch document " + name + " failed: " + e.getMessage());
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * @param index position of document in batch
+     * @param name name of document
+     * @param message description of error
+     * @return line of JSON with error
+     */
+    private String batchError(int index, String name, String message) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put(BATCH_INDEX, index);
+        node.put(BATCH_NAME, name);
+        node.put(BATCH_ERROR, message == null ? "Processing failed" : message);
+        return node.toString();
+    }
+
+    /**
+     * Write line of batch result and flush it to caller. Lines are written by batch workers
+     * concurrently, so writes are serialized on output.
+     *
+     * @param output stream of response
+     * @param line JSON of one document
+     * @throws IOException
+     */
+    private static void writeBatchLine(OutputStream output, String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (output) {
+            output.write(bytes);
+            output.flush();
+        }
+    }
+
+    /**
+     * Guess type of document from extension of its name.
+     *
+     * @param name name of document
+     * @return type of document
+     */
+    private static String typeOf(String name) {
+        String lower = name.toLowerCase();
+        if (lower.endsWith(".txt")) {
+            return TEXT_PLAIN;
+        } else if (lower.endsWith(".pdf")) {
+            return TEXT_PDF;
+        } else if (lower.endsWith(".doc") || lower.endsWith(".docx")) {
+            return TEXT_WORD;
+        }
+        return OCTET_STREAM;
+    }
+
+    /** Represents uploaded document which can be read more than once */
+    private interface BatchItem {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Return hit and miss counters of ResultCache.
+     *
+     * @param request incoming request
+     * @param response contains message header which will be returned back to caller
+     * @return String which holds response body
+     */
+    public Object resultCacheStatistics(Request request, Response response) {
+        if (resultCache == null) {
+            response.status(NOT_FOUND);
+            return "";
+        }
+
+        ObjectNode node = mapper.createObjectNode();
+        node.put(CACHE_HITS, resultCache.getHits());
+        node.put(CACHE_MISSES, resultCache.getMisses());
+        node.put(CACHE_EVICTIONS, resultCache.getEvictions());
+        node.put(CACHE_SIZE, resultCache.size());
+        node.put(CACHE_BYTES, resultCache.weight());
+        return node.toString();
+    }
+
     /**
      * Create Document out of bytes which are representing document which was uploaded
      * by caller and parse and return statistics.
@@ -36,14 +409,14 @@ public class BasicTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object parseAll(Request request, Response response) throws IOException {
-        Document document = super.createDocument(request);
+        Document document = receiveDocument(request, true);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(INTERNAL_ERROR);
             return "";
         }
 
-        return super.parseAll(document);
+        return super.parseAll(document, response);
     }
 
     /**
@@ -56,14 +429,14 @@ public class BasicTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object paragraphCount(Request request, Response response) throws IOException {
-        Document document = super.createDocument(request);
+        Document document = receiveDocument(request, false);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(INTERNAL_ERROR);
             return "";
         }
 
-        return super.paragraphCount(document);
+        return super.paragraphCount(document, response);
     }
 
     /**
@@ -76,14 +449,14 @@ public class BasicTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object paragraphLengthMax(Request request, Response response) throws IOException {
-        Document document = createDocument(request);
+        Document document = receiveDocument(request, false);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(INTERNAL_ERROR);
             return "";
         }
 
-        return super.paragraphLengthMax(document);
+        return super.paragraphLengthMax(document, response);
     }
 
     /**
@@ -96,14 +469,14 @@ public class BasicTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object paragraphLengthMin(Request request, Response response) throws IOException {
-        Document document = createDocument(request);
+        Document document = receiveDocument(request, false);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(INTERNAL_ERROR);
             return "";
         }
 
-        return super.paragraphLengthMin(document);
+        return super.paragraphLengthMin(document, response);
     }
 
     /**
@@ -116,19 +489,20 @@ public class BasicTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object paragraphLengthAvg(Request request, Response response) throws IOException {
-        Document document = createDocument(request);
+        Document document = receiveDocument(request, false);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(INTERNAL_ERROR);
             return "";
         }
 
-        return super.paragraphLengthAvg(document);
+        return super.paragraphLengthAvg(document, response);
     }
 
     /**
      * Create Document out of bytes which are representing document which was uploaded
-     * by caller and parse and return word frequency.
+     * by caller and parse and return word frequency. Query parameters top and minCount
+     * can limit returned words.
      *
      * @param request contains document which was uploaded
      * @param response contains message header which will be returned back to caller
@@ -136,13 +510,23 @@ public class BasicTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object wordFrequency(Request request, Response response) throws IOException {
-        Document document = createDocument(request);
+        long top, minCount;
+        try {
+            top = queryParam(request, TOP, Integer.MAX_VALUE);
+            minCount = queryParam(request, MIN_COUNT, 1);
+        } catch (NumberFormatException e) {
+            logger.error(request.uri() + " failed: " + e.getMessage());
+            response.status(BAD_REQUEST);
+            return "";
+        }
+
+        Document document = receiveDocument(request, true);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(INTERNAL_ERROR);
             return "";
         }
 
-        return super.wordFrequency(document);
+        return super.wordFrequency(document, top, minCount, response);
     }
 }
\ No newline at end of file
@@ -0,0 +1,179 @@
+package org.konica.interview;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Represents executor with bounded concurrency and bounded queue
+ *
+ * At most maxThreads tasks run at once and at most queueSize tasks wait.
+ * Task which does not fit is rejected by RejectedExecutionException right
+ * away, so callers are refused instead of waiting without limit.
+ *
+ * Executors of blocking I/O can run tasks on virtual threads when runtime
+ * supports them, concurrency is then bounded by semaphore. Otherwise tasks
+ * run on pool of daemon threads.
+ *
+ * Admitted and rejected tasks are reported in Metrics under name of executor.
+ */
+public class BoundedExecutor implements Executor {
+    private static final Logger logger = LoggerFactory.getLogger(BoundedExecutor.class);
+
+    private final String name;
+    private final ExecutorService executor;
+    private final Semaphore running;
+    private final AtomicInteger admitted;
+    private final int capacity;
+    private final LongAdder rejected;
+
+    /**
+     * @param name name of executor and prefix of names of its threads
+     * @param maxThreads maximum number of tasks running at once
+     * @param queueSize maximum number of tasks waiting
+     * @param virtual whether tasks should run on virtual threads if runtime supports them
+     */
+    public BoundedExecutor(String name, int maxThreads, int queueSize, boolean virtual) {
+        this.name = name;
+        this.capacity = maxThreads + queueSize;
+        this.admitted = new AtomicInteger();
+        this.rejected = new LongAdder();
+
+        ExecutorService executor = virtual ? virtualThreadExecutor() : null;
+        if (executor != null) {
+            this.executor = executor;
+            this.running = new Semaphore(maxThreads);
+            logger.info("Executor " + name + " uses virtual threads");
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+                        Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.running = null;
+        }
+
+        String labels = Metrics.labels("executor", name);
+        Metrics.gauge("text_processor_executor_admitted_tasks", "Tasks running or waiting in executor", labels, admitted::get);
+        Metrics.counter("text_processor_executor_rejected_tasks_total", "Tasks refused because executor was full", labels, rejected::sum);
+    }
+
+    /**
+     * Create executor which starts new virtual thread for every task.
+     *
+     * @return executor or null if runtime does not support virtual threads
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Run task or reject it if executor is full.
+     *
+     * @param task task to be run
+     * @throws RejectedExecutionException if too many tasks are running and waiting
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (admitted.incrementAndGet() > capacity) {
+            admitted.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException(name + " is overloaded");
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    if (running != null) {
+                        running.acquireUninterruptibly();
+                    }
+                    try {
+                        task.run();
+                    } finally {
+                        if (running != null) {
+                            running.release();
+                        }
+                    }
+                } finally {
+                    admitted.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admitted.decrementAndGet();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Run task and wait for its result.
+     *
+     * @param task task to be run
+     * @return result of task
+     * @throws Exception thrown by task
+     * @throws RejectedExecutionException if too many tasks are running and waiting
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stop accepting tasks and wait for running ones.
+     *
+     * @param timeout maximum time to wait in milliseconds
+     * @throws InterruptedException
+     */
+    public void shutdown(long timeout) throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return number of tasks running or waiting
+     */
+    public int getAdmitted() {
+        return admitted.get();
+    }
+
+    /**
+     * @return number of rejected tasks
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,131 @@
+package org.konica.interview;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Represents text compressed by Deflate
+ *
+ * Text is encoded to UTF-8 and compressed. It can be read back whole or
+ * streamed through Reader without decompressing it whole into memory.
+ *
+ * Raw and compressed size of all texts compressed since start are counted,
+ * so that compression ratio can be reported. Counters only grow, they are
+ * not decreased when compressed text is discarded.
+ */
+public class CompressedText {
+    private static final LongAdder rawBytesTotal = new LongAdder();
+    private static final LongAdder compressedBytesTotal = new LongAdder();
+
+    private final byte[] bytes;
+    private final int length;
+
+    /**
+     * @param bytes compressed text
+     * @param length length of text encoded to UTF-8 in bytes
+     */
+    public CompressedText(byte[] bytes, int length) {
+        this.bytes = bytes;
+        this.length = length;
+    }
+
+    /**
+     * Compress text.
+     *
+     * @param text text to be compressed
+     * @return compressed text
+     */
+    public static CompressedText compress(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        byte[] buffer = new byte[8192];
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        byte[] bytes = out.toByteArray();
+        rawBytesTotal.add(raw.length);
+        compressedBytesTotal.add(bytes.length);
+        return new CompressedText(bytes, raw.length);
+    }
+
+    /**
+     * @return text decompressed whole
+     * @throws IllegalStateException if compressed text is corrupted or truncated
+     */
+    public String decompress() {
+        byte[] raw = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            int off = 0;
+            while (off < length && !inflater.finished()) {
+                int n = inflater.inflate(raw, off, length - off);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Compressed text is truncated");
+                }
+                off += n;
+            }
+
+            if (off < length) {
+                throw new IllegalStateException("Compressed text is shorter than its length");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed text is corrupted", e);
+        } finally {
+            inflater.end();
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return reader which decompresses text while it is read
+     */
+    public Reader reader() {
+        return new InputStreamReader(new InflaterInputStream(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return compressed bytes
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return length of text encoded to UTF-8 in bytes
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return total size in bytes of all texts compressed since start, before compression
+     */
+    public static long getRawBytesTotal() {
+        return rawBytesTotal.sum();
+    }
+
+    /**
+     * @return total size in bytes of all texts compressed since start, after compression
+     */
+    public static long getCompressedBytesTotal() {
+        return compressedBytesTotal.sum();
+    }
+}
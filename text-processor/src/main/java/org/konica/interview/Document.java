@@ -2,28 +2,59 @@ package org.konica.interview;
 
 import com.fasterxml.jackson.annotation.JsonFilter;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Represents document. Holds content of document retrieved from TextExtractor.
  * Holds logic for extracting statistics from document.
  *
+ * Content can be compressed. Compressed content is decompressed only when statistics
+ * have to be computed from it and it is never kept decompressed.
+ *
+ * Statistics are computed at most once for every version of text and kept in
+ * Document, values derived from them, e.g. word frequency sorted by occurrences,
+ * are kept too. Cached Document is read by many threads at once, statistics are
+ * computed and derived under lock of Document, i.e. synchronized on Document itself,
+ * and published by volatile flag, so repeated reads take no lock and do no work.
+ * Once all statistics are derived text is no longer needed to answer requests.
+ * It can be compressed, and once it is stored in database it can be dropped
+ * altogether.
+ *
+ * Text can be appended to Document. Only appended text is split and tokenized,
+ * its statistics are merged to kept statistics and derived values are derived again.
+ * Appended text is kept as separate chunk after text Document was created with, so
+ * appending neither copies nor needs current text, text can be appended even after
+ * it was dropped. Chunks are numbered from the first one ever appended, number of
+ * chunks is version of text, and only chunks appended since the version which was
+ * stored have to be written to database.
  */
 @JsonFilter("Document")
 public class Document {
-    private String content;
+    private volatile String content;
     private Integer paragraphCount;
     private Integer paragraphMaxLength;
     private Integer paragraphMinLength;
     private Integer paragraphAvgLength;
     private HashMap<String, Long> wordFrequency;
-    private ArrayList<String> paragraphs;
+    private volatile ArrayList<String> paragraphs;
+    private volatile CompressedText compressed;
+    private volatile DocumentStatistics statistics;
+    private volatile boolean derived;
+    private volatile boolean stored;
+    private final ArrayList<String> appended;
+    private volatile long appendedSize;
+    private int appendedOffset;
+    private int storedVersion;
+    private long paragraphLengthSum;
+    private long textLength;
 
     /**
      * Constructor for empty Document
@@ -36,6 +67,26 @@ public class Document {
         this.paragraphAvgLength = Integer.MIN_VALUE;
         this.wordFrequency = null;
         this.paragraphs = null;
+        this.appended = new ArrayList<>();
+        this.storedVersion = -1;
+    }
+
+    /**
+     * Constructor for Document which content was not kept, only its statistics.
+     * @param statistics finished statistics of document content
+     */
+    public Document(DocumentStatistics statistics) {
+        this();
+        this.statistics = statistics;
+    }
+
+    /**
+     * Constructor for Document which content is compressed.
+     * @param compressed compressed content of document
+     */
+    public Document(CompressedText compressed) {
+        this();
+        this.compressed = compressed;
     }
 
     /**
@@ -50,7 +101,8 @@ public class Document {
         this.paragraphAvgLength = Integer.MIN_VALUE;
         this.wordFrequency = null;
         this.paragraphs = null;
-        splitByParagraphs();
+        this.appended = new ArrayList<>();
+        this.storedVersion = -1;
     }
 
 
@@ -124,6 +176,99 @@ public class Document {
         return paragraphAvgLength;
     }
 
+    /**
+     * @return sum of lengths of all paragraphs, known only after statistics were parsed
+     */
+    public long paragraphLengthSum() {
+        return paragraphLengthSum;
+    }
+
+    /**
+     * @return length of text in characters, known only after statistics were parsed
+     */
+    public long textLength() {
+        return textLength;
+    }
+
+    /**
+     * Keep finished statistics of Document, e.g. statistics restored from database, so that
+     * they are not computed again from text and text can be appended to them.
+     *
+     * @param statistics finished statistics of text of Document
+     */
+    public synchronized void keepStatistics(DocumentStatistics statistics) {
+        this.statistics = statistics;
+        this.derived = false;
+    }
+
+    /**
+     * Version of text of Document, i.e. number of chunks ever appended to it.
+     *
+     * @return version of text
+     */
+    public synchronized int version() {
+        return appendedOffset + appended.size();
+    }
+
+    /**
+     * Mark version of text of Document as stored in database. Text is stored as a whole
+     * only if nothing was appended since.
+     *
+     * @param version version of text which was stored
+     */
+    public synchronized void markStored(int version) {
+        storedVersion = Math.max(storedVersion, version);
+        stored = storedVersion == version();
+    }
+
+    /**
+     * @return version of text which is stored in database, -1 if Document was never stored
+     */
+    public synchronized int storedVersion() {
+        return storedVersion;
+    }
+
+    /**
+     * @return true if current text of Document and its statistics are stored in database
+     */
+    public boolean textStored() {
+        return stored;
+    }
+
+    /**
+     * Drop content, paragraphs and compressed content once all statistics are derived
+     * and text is stored in database, statistics are kept.
+     *
+     * @return true if text was dropped
+     */
+    public synchronized boolean dropText() {
+        if (!derived || !stored || !hasText() && appended.isEmpty()) {
+            return false;
+        }
+
+        content = null;
+        paragraphs = null;
+        compressed = null;
+        appendedOffset += appended.size();
+        appended.clear();
+        appendedSize = 0;
+        return true;
+    }
+
+    /**
+     * @return true if statistics can be read without processing text of Document
+     */
+    public boolean statisticsReady() {
+        return derived || statistics != null || !hasText();
+    }
+
+    /**
+     * @return true if all statistics of current text were derived and text is no longer needed for them
+     */
+    public boolean statisticsDerived() {
+        return derived;
+    }
+
     /**
      * @return list of word ordered in descending order with occasions counter
      */
@@ -132,23 +277,326 @@ public class Document {
     }
 
     /**
+     * Paragraphs are split out of content only when they are requested.
+     *
      * @return array of paragraphs
      */
     public ArrayList<String> getParagraphs(){
+        ArrayList<String> paragraphs = this.paragraphs;
+        if (paragraphs == null || hasAppended()) {
+            paragraphs = splitByParagraphs();
+        }
         return paragraphs;
     }
 
     /**
-     * Split content to paragraphs
+     * Approximate heap size of content, paragraphs and kept statistics of Document.
+     *
+     * @return size in bytes
      */
-    private void splitByParagraphs() {
-        if (content == null)
+    public long estimateSize() {
+        long size = 64;
+        String content = this.content;
+        if (content != null) {
+            size += 40 + 2L * content.length();
+        }
+        ArrayList<String> paragraphs = this.paragraphs;
+        if (paragraphs != null) {
+            for (String p : paragraphs) {
+                size += 40 + 2L * p.length();
+            }
+        }
+        CompressedText compressed = this.compressed;
+        if (compressed != null) {
+            size += 32 + compressed.bytes().length;
+        }
+        size += appendedSize;
+        DocumentStatistics statistics = this.statistics;
+        if (statistics != null && statistics.getWordCounts() != null) {
+            size += statistics.getWordCounts().estimateSize();
+        }
+        HashMap<String, Long> wordFrequency = this.wordFrequency;
+        if (wordFrequency != null) {
+            size += 64L * wordFrequency.size();
+        }
+        return size;
+    }
+
+    /**
+     * Replace content and paragraphs by compressed content. Appended chunks are not compressed.
+     */
+    public synchronized void compress() {
+        if (compressed != null) {
+            return;
+        }
+
+        String text = baseText();
+        if (text == null) {
+            return;
+        }
+
+        // compressed content has to be visible before plain content disappears
+        compressed = CompressedText.compress(text);
+        content = null;
+        paragraphs = null;
+    }
+
+    /**
+     * @return compressed content or null if content is not compressed, appended chunks are not included
+     */
+    public CompressedText compressed() {
+        return compressed;
+    }
+
+    /**
+     * Append text to Document. Appended text always starts new paragraph. Statistics of
+     * current text are computed only if they are not kept yet, then only appended text
+     * is processed and its statistics are merged to them. Appended text is kept as new
+     * chunk, current text is not read or copied.
+     *
+     * @param text appended text
+     * @throws IllegalStateException if Document holds neither its text nor its statistics
+     */
+    public synchronized void append(String text) {
+        if (text.isEmpty()) {
             return;
+        }
+
+        DocumentStatistics statistics = computeStatistics();
+        if (statistics == null) {
+            throw new IllegalStateException("Text of document is not available");
+        }
+
+        // statistics are merged only at paragraph boundary
+        String chunk = separator() + text;
+        DocumentStatistics delta = new DocumentStatistics(true);
+        delta.accept(chunk);
+        delta.finish();
+
+        statistics.merge(delta);
+        derived = false;
+        stored = false;
+
+        appended.add(chunk);
+        appendedSize += 40 + 2L * chunk.length();
+    }
+
+    /**
+     * Restore chunks which were appended to stored text, e.g. chunks read from database.
+     * Their statistics are not computed, they have to be kept or computed from whole text.
+     *
+     * @param chunks appended chunks in order in which they were appended
+     */
+    public synchronized void restoreAppended(List<String> chunks) {
+        for (String chunk : chunks) {
+            appended.add(chunk);
+            appendedSize += 40 + 2L * chunk.length();
+        }
+        derived = false;
+    }
+
+    /**
+     * @param from version of text since which chunks are returned
+     * @return chunks appended since given version
+     * @throws IllegalStateException if some of chunks were dropped already
+     */
+    public synchronized List<String> appended(int from) {
+        if (from < appendedOffset) {
+            throw new IllegalStateException("Chunks appended since version " + from + " were dropped");
+        }
+        return new ArrayList<>(appended.subList(Math.min(from - appendedOffset, appended.size()), appended.size()));
+    }
+
+    /**
+     * @return true if text was appended to Document and it is held in chunks
+     */
+    public synchronized boolean hasAppended() {
+        return !appended.isEmpty();
+    }
+
+    /**
+     * Separator of appended text, so that it starts new paragraph. End of compressed or
+     * dropped text is not known, line break is added then. Empty line is no paragraph,
+     * so such separator changes only length of text.
+     *
+     * @return separator put before appended text
+     */
+    private String separator() {
+        if (!appended.isEmpty()) {
+            return appended.get(appended.size() - 1).endsWith("\n") ? "" : "\n";
+        }
+        String content = this.content;
+        if (content != null) {
+            return content.isEmpty() || content.endsWith("\n") ? "" : "\n";
+        }
+        ArrayList<String> paragraphs = this.paragraphs;
+        if (paragraphs != null) {
+            return paragraphs.isEmpty() ? "" : "\n";
+        }
+        return "\n";
+    }
+
+    /**
+     * Split content to paragraphs. Paragraphs are kept instead of content only when no
+     * text was appended, appended chunks are kept apart.
+     *
+     * @return paragraphs or null if Document holds only statistics
+     */
+    private synchronized ArrayList<String> splitByParagraphs() {
+        String content = text();
+        if (content == null)
+            return null;
 
         String[] p = content.split("\n");
-        paragraphs = new ArrayList<>(Arrays.asList(p));
+        ArrayList<String> paragraphs = new ArrayList<>(Arrays.asList(p));
 
         paragraphs.removeIf(String::isEmpty);
+        if (appended.isEmpty()) {
+            this.paragraphs = paragraphs;
+        }
+        return paragraphs;
+    }
+
+    /**
+     * Check whether statistics can be computed. Document restored from stored statistics
+     * has neither text nor DocumentStatistics and only returns values it was set.
+     *
+     * @return true if Document has content, paragraphs or DocumentStatistics
+     */
+    private boolean isDerivable() {
+        return hasText() || statistics != null;
+    }
+
+    /**
+     * @return true if Document has content, paragraphs or compressed content, so its whole text is known
+     */
+    public boolean hasText() {
+        return content != null || paragraphs != null || compressed != null;
+    }
+
+    /**
+     * Text of Document followed by appended chunks.
+     *
+     * @return text or null if Document holds only statistics
+     */
+    public synchronized String text() {
+        String text = baseText();
+        if (text == null || appended.isEmpty()) {
+            return text;
+        }
+
+        StringBuilder builder = new StringBuilder(text);
+        for (String chunk : appended) {
+            builder.append(chunk);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Text Document was created with, either content, paragraphs separated by '\n' or
+     * decompressed content, without appended chunks.
+     *
+     * @return text or null if Document holds only statistics
+     */
+    public String baseText() {
+        String content = this.content;
+        if (content != null) {
+            return content;
+        }
+        ArrayList<String> paragraphs = this.paragraphs;
+        if (paragraphs != null) {
+            return String.join("\n", paragraphs);
+        }
+        CompressedText compressed = this.compressed;
+        return compressed == null ? null : compressed.decompress();
+    }
+
+    /**
+     * Return kept statistics or run statistics engine over content, or over paragraphs if
+     * content is not present, and keep them. Large content is processed in parallel.
+     * Words are always counted so that kept statistics can answer every request.
+     * Has to be called under lock of Document.
+     *
+     * @return statistics of current text
+     * @see DocumentStatistics
+     */
+    private DocumentStatistics computeStatistics() {
+        DocumentStatistics statistics = this.statistics;
+        if (statistics != null || !hasText()) {
+            return statistics;
+        }
+
+        long start = RequestTiming.start();
+        try {
+            statistics = runStatistics();
+        } finally {
+            RequestTiming.end(RequestTiming.STATISTICS, start);
+        }
+        this.statistics = statistics;
+        return statistics;
+    }
+
+    private DocumentStatistics runStatistics() {
+        if (!appended.isEmpty()) {
+            return ParallelStatistics.compute(text(), true);
+        }
+
+        String content = this.content;
+        ArrayList<String> paragraphs = this.paragraphs;
+        CompressedText compressed = content == null && paragraphs == null ? this.compressed : null;
+
+        if (content != null) {
+            return ParallelStatistics.compute(content, true);
+        }
+
+        DocumentStatistics statistics = new DocumentStatistics(true);
+
+        if (paragraphs != null) {
+            for (String p : paragraphs) {
+                statistics.accept(p);
+                statistics.accept("\n");
+            }
+        } else if (compressed != null) {
+            try (Reader reader = compressed.reader()) {
+                char[] buffer = new char[8192];
+                int n;
+                while ((n = reader.read(buffer)) != -1) {
+                    statistics.accept(buffer, 0, n);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        statistics.finish();
+        return statistics;
+    }
+
+    /**
+     * Derive all statistics at once, only if they were not derived from current text yet.
+     */
+    public void parseStatistics() {
+        if (derived || !isDerivable()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (derived) {
+                return;
+            }
+
+            DocumentStatistics statistics = computeStatistics();
+            paragraphCount = statistics.getParagraphCount();
+            paragraphMaxLength = statistics.getParagraphMaxLength();
+            paragraphMinLength = statistics.getParagraphMinLength();
+            paragraphAvgLength = statistics.getParagraphAvgLength();
+            paragraphLengthSum = statistics.getParagraphLengthSum();
+            textLength = statistics.getLength();
+            wordFrequency = statistics.getWordCounts() == null ? null : sortByFrequency(statistics.getWordCounts());
+
+            // fields have to be visible before flag which publishes them
+            derived = true;
+        }
     }
 
     /**
@@ -156,8 +604,14 @@ public class Document {
      * @return paragraph count
      */
     public Integer parseParagraphCount() {
-        paragraphCount = paragraphs.size();
-        return paragraphCount;
+        if (derived || !isDerivable()) {
+            return paragraphCount;
+        }
+
+        synchronized (this) {
+            paragraphCount = computeStatistics().getParagraphCount();
+            return paragraphCount;
+        }
     }
 
     /**
@@ -165,9 +619,14 @@ public class Document {
      * @return length of the longest paragraph
      */
     public Integer parseParagraphMaxLength() {
-        String longest = paragraphs.stream().max(Comparator.comparingInt(String::length)).get();
-        paragraphMaxLength = longest.length();
-        return paragraphMaxLength;
+        if (derived || !isDerivable()) {
+            return paragraphMaxLength;
+        }
+
+        synchronized (this) {
+            paragraphMaxLength = computeStatistics().getParagraphMaxLength();
+            return paragraphMaxLength;
+        }
     }
 
     /**
@@ -175,9 +634,14 @@ public class Document {
      * @return length of the shortest paragraph
      */
     public Integer parseParagraphMinLength() {
-        String longest = paragraphs.stream().min(Comparator.comparingInt(String::length)).get();
-        paragraphMinLength = longest.length();
-        return paragraphMinLength;
+        if (derived || !isDerivable()) {
+            return paragraphMinLength;
+        }
+
+        synchronized (this) {
+            paragraphMinLength = computeStatistics().getParagraphMinLength();
+            return paragraphMinLength;
+        }
     }
 
     /**
@@ -185,8 +649,16 @@ public class Document {
      * @return average length of the paragraph
      */
     public Integer parseParagraphAvgLength() {
-        paragraphAvgLength = paragraphs.stream().mapToInt(String::length).sum() / parseParagraphCount();
-        return paragraphAvgLength;
+        if (derived || !isDerivable()) {
+            return paragraphAvgLength;
+        }
+
+        synchronized (this) {
+            DocumentStatistics statistics = computeStatistics();
+            paragraphCount = statistics.getParagraphCount();
+            paragraphAvgLength = statistics.getParagraphAvgLength();
+            return paragraphAvgLength;
+        }
     }
 
     /**
@@ -195,22 +667,43 @@ public class Document {
      * @return word frequency in descending order
      */
     public HashMap<String, Long> parseWordFrequency() {
-        wordFrequency = new HashMap<>();
-
-        for (String p : paragraphs) {
-            String[] words = p.split("\\W+");
-            for (String word : words) {
-                Long freq = wordFrequency.get(word);
-                freq = freq == null ? 1 : ++freq;
-                wordFrequency.put(word, freq);
+        parseStatistics();
+        return wordFrequency;
+    }
+
+    /**
+     * Select only the most frequent words. Document which holds only statistics, e.g. of
+     * uploaded document, selects them from word counts without sorting all words, otherwise
+     * they are selected from derived word frequency. Result is not stored in Document.
+     *
+     * @param top maximum number of words to be returned
+     * @param minCount minimum occurrences of word to be returned
+     * @return word frequency in descending order
+     */
+    public HashMap<String, Long> parseWordFrequency(int top, long minCount) {
+        if (!derived && !hasText() && statistics != null) {
+            return statistics.getWordCounts().topByFrequency(top, minCount);
+        }
+        parseStatistics();
+
+        // derived and stored word frequency is already in descending order
+        LinkedHashMap<String, Long> selected = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : wordFrequency.entrySet()) {
+            if (selected.size() >= top || e.getValue() < minCount) {
+                break;
             }
+            selected.put(e.getKey(), e.getValue());
         }
+        return selected;
+    }
 
-        wordFrequency = wordFrequency
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e1, LinkedHashMap::new));
-        return wordFrequency;
+    /**
+     * Sort words by occurrences in descending order.
+     *
+     * @param wordCounts word occurrences
+     * @return word frequency in descending order
+     */
+    private static HashMap<String, Long> sortByFrequency(WordCounter wordCounts) {
+        return wordCounts.sortedByFrequency();
     }
 }
\ No newline at end of file
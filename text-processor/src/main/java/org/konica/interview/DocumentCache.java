@@ -1,73 +1,246 @@
 package org.konica.interview;
 
-import java.time.Instant;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 /** Represents caching system
  *
- * DocumentCache is able to store documents for interval of 5 seconds.
- * If document is not accessed in any way in this interval it is removed from cache.
+ * DocumentCache is able to store documents for interval of ttl milliseconds.
+ * If document is not accessed in any way in this interval it is removed from cache
+ * and handed over to listener.
+ *
+ * Document and time of its last access are kept together in one entry of
+ * concurrent map. Reads only update access time of entry, they never lock,
+ * and entries are removed atomically only if they were not replaced meanwhile.
+ *
+ * Expiry is driven by TimingWheel. Entry is scheduled when it is stored. When it
+ * is due and was accessed meanwhile, it is scheduled again for the rest of its
+ * time to live, so reads never touch the wheel.
+ *
+ * Optionally documents which were not accessed for half of their time to live
+ * are compressed and their weight is lowered accordingly. Documents whose
+ * statistics were all derived are compressed at their next check even if they
+ * are accessed, their plain text is not needed to answer requests any more.
+ *
+ * Text of documents whose statistics were all derived is dropped, whether they
+ * are compressed or not. At their next check such documents are handed over to
+ * store listener, unless they are stored already, and once they are stored their
+ * text is dropped at the following check and their weight is lowered to weight
+ * of their statistics.
+ *
+ * Cache is bounded by approximate size of cached documents in bytes. Eviction
+ * follows W-TinyLFU: new entries enter small LRU window, entries leaving the
+ * window are admitted to main LRU only if they are used more often than its
+ * least recently used entry. Frequency is estimated by FrequencySketch. Reads
+ * are recorded into lossy buffer which is replayed under lock, so reads do not
+ * contend on it. Evicted entries are handed over to listener as expired ones.
+ *
+ * @see TimingWheel
+ * @see FrequencySketch
  */
 public class DocumentCache {
-    private ReadWriteLock lock;
-    private HashMap<UUID, Document> cache;
-    private HashMap<UUID, Long> timestamps;
+    public static final int DEFAULT_TTL  = 5000;
+    public static final int DEFAULT_TICK = 100;
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int DRAIN_MASK = 31;
+    private static final int WINDOW_PERCENT = 1;
+
+    private ConcurrentHashMap<UUID, Entry> cache;
+    private TimingWheel<Entry> expiry;
+    private BiConsumer<UUID, Document> listener;
+    private BiConsumer<UUID, Document> storeListener;
+    private long ttl;
+    private boolean compressIdle;
+
+    private ReentrantLock evictionLock;
+    private LinkedHashMap<UUID, Entry> window;
+    private LinkedHashMap<UUID, Entry> main;
+    private FrequencySketch sketch;
+    private AtomicReferenceArray<Entry> readBuffer;
+    private long maxWeight;
+    private long windowMaxWeight;
+    private long windowWeight;
+    private long mainWeight;
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Cached document together with time of its last access
+     */
+    private static class Entry {
+        private final UUID uuid;
+        private final Document document;
+        private long weight;
+        private boolean compressed;
+        private boolean submitted;
+        private volatile long accessed;
+
+        private Entry(UUID uuid, Document document, long accessed) {
+            this.uuid = uuid;
+            this.document = document;
+            this.weight = document.estimateSize();
+            this.accessed = accessed;
+        }
+    }
+
+    /**
+     * Initialize cache which never drops text of documents
+     *
+     * @param ttl time in milliseconds for which document can stay in cache without being accessed
+     * @param tick precision of expiry in milliseconds
+     * @param maxWeight maximum approximate size of cached documents in bytes
+     * @param compressIdle whether documents idle for half of ttl should be compressed
+     * @param listener receives expired and evicted documents
+     */
+    public DocumentCache(long ttl, long tick, long maxWeight, boolean compressIdle, BiConsumer<UUID, Document> listener) {
+        this(ttl, tick, maxWeight, compressIdle, listener, (uuid, document) -> { });
+    }
 
     /**
      * Initialize cache
+     *
+     * @param ttl time in milliseconds for which document can stay in cache without being accessed
+     * @param tick precision of expiry in milliseconds
+     * @param maxWeight maximum approximate size of cached documents in bytes
+     * @param compressIdle whether documents idle for half of ttl should be compressed
+     * @param listener receives expired and evicted documents
+     * @param storeListener receives cached documents whose statistics were all derived and
+     *                      which are not stored yet, it should store them and mark them as stored
      */
-    public DocumentCache() {
-        this.lock = new ReentrantReadWriteLock();
-        this.cache = new HashMap<>();
-        this.timestamps = new HashMap<>();
+    public DocumentCache(long ttl, long tick, long maxWeight, boolean compressIdle, BiConsumer<UUID, Document> listener,
+                         BiConsumer<UUID, Document> storeListener) {
+        this.cache = new ConcurrentHashMap<>();
+        this.ttl = ttl;
+        this.compressIdle = compressIdle;
+        this.listener = listener;
+        this.storeListener = storeListener;
+        this.expiry = new TimingWheel<>("document-cache-expiry", tick, ttl, this::expire);
+
+        this.evictionLock = new ReentrantLock();
+        this.window = new LinkedHashMap<>(16, 0.75f, true);
+        this.main = new LinkedHashMap<>(16, 0.75f, true);
+        this.sketch = new FrequencySketch((int) Math.min(1 << 22, maxWeight / 4096));
+        this.readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        this.maxWeight = maxWeight;
+        this.windowMaxWeight = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+        this.windowWeight = 0;
+        this.mainWeight = 0;
     }
 
     /**
-     * Periodically check for documents which were not accessed in any way for time period longer than invalidate
-     * parameter sets. Documents with timestamp older than this threshold are deleted from cache and returned to DocumentStore
-     * @param invalidate sets how old documents can stay in cache
-     * @return Documents to be stored in database
-     * @see DocumentStore
-     * @see Document
+     * Stop expiry of documents.
      */
-    public HashMap<UUID, org.konica.interview.Document> invalidate(Integer invalidate) {
-        Long now = Instant.now().getEpochSecond();
+    public void shutdown() {
+        expiry.shutdown();
+    }
 
-        lockRead();
-            if (timestamps.isEmpty()) {
-                unlockRead();
-                return null;
+    /**
+     * Remove all documents and hand them over to listener.
+     */
+    public void flush() {
+        for (Entry entry : cache.values()) {
+            if (cache.remove(entry.uuid, entry)) {
+                evictionLock.lock();
+                try {
+                    unlink(entry);
+                } finally {
+                    evictionLock.unlock();
+                }
+                listener.accept(entry.uuid, entry.document);
             }
+        }
+    }
 
-            Set<UUID> deadOnes = timestamps
-                    .entrySet()
-                    .stream()
-                    .filter(e -> (now - e.getValue()) > invalidate)
-                    .map(e -> e.getKey())
-                    .collect(Collectors.toSet());
+    /**
+     * Time of the next check of entry, either its expiry or time when it should be compressed.
+     *
+     * @param entry cached entry
+     * @return time in milliseconds since epoch
+     */
+    private long nextCheck(Entry entry) {
+        return entry.accessed + (compressIdle && !entry.compressed ? ttl / 2 : ttl);
+    }
 
-            if (deadOnes.isEmpty()) {
-                unlockRead();
-                return null;
+    /**
+     * Called by timing wheel when entry is due. Entry which was accessed meanwhile is
+     * scheduled again, otherwise it is removed and handed over to listener. Entry idle
+     * for half of ttl or entry whose statistics were all derived is compressed. Entry
+     * whose statistics were all derived is handed over to store listener, its text is
+     * dropped once it is stored.
+     *
+     * @param entry due entry
+     */
+    private void expire(Entry entry) {
+        long idle = System.currentTimeMillis() - entry.accessed;
+        if (idle < ttl) {
+            if (cache.get(entry.uuid) == entry) {
+                Document document = entry.document;
+                if (document.statisticsDerived()) {
+                    if (document.textStored()) {
+                        if (document.dropText()) {
+                            reweigh(entry);
+                        }
+                    } else if (!entry.submitted) {
+                        entry.submitted = true;
+                        storeListener.accept(entry.uuid, document);
+                    }
+                }
+                if (compressIdle && !entry.compressed && (idle >= ttl / 2 || document.statisticsDerived())) {
+                    document.compress();
+                    entry.compressed = true;
+                    reweigh(entry);
+                }
+                expiry.schedule(entry, nextCheck(entry));
             }
+            return;
+        }
 
-            HashMap<UUID, Document> store = new HashMap<>();
-            for (UUID uuid : deadOnes) {
-                store.put(uuid, cache.get(uuid));
+        if (cache.remove(entry.uuid, entry)) {
+            evictionLock.lock();
+            try {
+                unlink(entry);
+            } finally {
+                evictionLock.unlock();
             }
-        unlockRead();
+            expirations.increment();
+            listener.accept(entry.uuid, entry.document);
+        }
+    }
 
-        lockWrite();
-            cache.values().removeAll(deadOnes);
-            timestamps.keySet().removeAll(deadOnes);
-        unlockWrite();
+    /**
+     * Update weight of entry whose document was compressed or whose text was dropped.
+     *
+     * @param entry cached entry
+     */
+    private void reweigh(Entry entry) {
+        long weight = entry.document.estimateSize();
 
-        return store;
+        evictionLock.lock();
+        try {
+            // entry which left cache keeps weight it is linked with until it is unlinked
+            if (cache.get(entry.uuid) == entry) {
+                if (window.containsKey(entry.uuid)) {
+                    windowWeight += weight - entry.weight;
+                } else if (main.containsKey(entry.uuid)) {
+                    mainWeight += weight - entry.weight;
+                }
+                entry.weight = weight;
+            }
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     /**
@@ -79,10 +252,64 @@ public class DocumentCache {
      * @see Document
      */
     public void store(UUID uuid, Document document) {
-        lockWrite();
-            cache.put(uuid, document);
-            timestamps.put(uuid, Instant.now().getEpochSecond());
-        unlockWrite();
+        store(uuid, document, true);
+    }
+
+    /**
+     * Saves Document to cache unless other Document is cached under the same uuid, e.g.
+     * Document which was read meanwhile by other request and text was appended to it.
+     *
+     * @param uuid identifies Document
+     * @param document Document to be stored
+     * @return cached Document, either the given one or the one which was cached already
+     */
+    public Document storeIfAbsent(UUID uuid, Document document) {
+        return store(uuid, document, false);
+    }
+
+    private Document store(UUID uuid, Document document, boolean replace) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(uuid, document, now);
+
+        // document which can never fit is not cached at all
+        if (entry.weight > maxWeight) {
+            if (!replace) {
+                Document cached = get(uuid);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            delete(uuid);
+            evictions.increment();
+            listener.accept(uuid, document);
+            return document;
+        }
+
+        List<Entry> evicted;
+        evictionLock.lock();
+        try {
+            Entry previous = replace ? cache.put(uuid, entry) : cache.putIfAbsent(uuid, entry);
+            if (previous != null && !replace) {
+                previous.accessed = now;
+                return previous.document;
+            }
+            // entry removed from map by delete or expiry which did not unlink it yet is replaced too
+            unlink(uuid);
+
+            sketch.increment(uuid);
+            window.put(uuid, entry);
+            windowWeight += entry.weight;
+            evicted = evict();
+        } finally {
+            evictionLock.unlock();
+        }
+
+        expiry.schedule(entry, nextCheck(entry));
+        evictions.add(evicted.size());
+        for (Entry e : evicted) {
+            listener.accept(e.uuid, e.document);
+        }
+        return document;
     }
 
     /**
@@ -93,20 +320,14 @@ public class DocumentCache {
      * @see Document
      */
     public Document get(UUID uuid) {
-        Long now = Instant.now().getEpochSecond();
+        Entry entry = cache.get(uuid);
+        if (entry == null) {
+            return null;
+        }
 
-        lockWrite();
-            Long t = timestamps.replace(uuid, now);
-            if (t == null) {
-                unlockWrite();
-                return null;
-            }
-        unlockWrite();
-
-        lockRead();
-            Document document = cache.get(uuid);
-        unlockRead();
-        return document;
+        entry.accessed = System.currentTimeMillis();
+        recordRead(entry);
+        return entry.document;
     }
 
     /**
@@ -117,34 +338,175 @@ public class DocumentCache {
      * @return status of operation
      */
     public boolean delete(UUID uuid) {
-        return cache.remove(uuid) != null;
+        Entry entry = cache.remove(uuid);
+        if (entry == null) {
+            return false;
+        }
+
+        evictionLock.lock();
+        try {
+            unlink(entry);
+        } finally {
+            evictionLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * @return approximate size of cached documents in bytes
+     */
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return windowWeight + mainWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of cached documents
+     */
+    public int size() {
+        return cache.size();
     }
 
     /**
-     * Lock reading lock
+     * @return number of documents evicted because cache was full
      */
-    private void lockRead() {
-        lock.readLock().lock();
+    public long getEvictions() {
+        return evictions.sum();
     }
 
     /**
-     * Unlock reading lock
+     * @return number of documents removed because they were not accessed for ttl
      */
-    private void unlockRead() {
-        lock.readLock().unlock();
+    public long getExpirations() {
+        return expirations.sum();
     }
 
     /**
-     * Lock writing lock
+     * Record read into lossy buffer. Buffer is replayed once in a while if lock is free.
+     *
+     * @param entry entry which was read
      */
-    private void lockWrite() {
-        lock.writeLock().lock();
+    private void recordRead(Entry entry) {
+        int random = ThreadLocalRandom.current().nextInt();
+        readBuffer.lazySet(random & (READ_BUFFER_SIZE - 1), entry);
+
+        if ((random >>> 16 & DRAIN_MASK) == 0 && evictionLock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
     }
 
     /**
-     * Unlock writing lock
+     * Replay recorded reads on frequency sketch and LRU order. Has to be called under lock.
      */
-    private void unlockWrite() {
-        lock.writeLock().unlock();
+    private void drainReads() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            Entry entry = readBuffer.getAndSet(i, null);
+            if (entry == null) {
+                continue;
+            }
+
+            sketch.increment(entry.uuid);
+            // get on access ordered map moves entry to the end
+            if (window.get(entry.uuid) == null) {
+                main.get(entry.uuid);
+            }
+        }
+    }
+
+    /**
+     * Remove entry from window or main. Entry which is linked no more, e.g. because it was
+     * replaced, is left as it is. Has to be called under lock.
+     *
+     * @param entry entry to be removed
+     */
+    private void unlink(Entry entry) {
+        if (window.get(entry.uuid) == entry) {
+            window.remove(entry.uuid);
+            windowWeight -= entry.weight;
+        } else if (main.get(entry.uuid) == entry) {
+            main.remove(entry.uuid);
+            mainWeight -= entry.weight;
+        }
+    }
+
+    /**
+     * Remove whatever entry of uuid is in window or main. Has to be called under lock.
+     *
+     * @param uuid identifies entry to be removed
+     */
+    private void unlink(UUID uuid) {
+        Entry linked = window.remove(uuid);
+        if (linked != null) {
+            windowWeight -= linked.weight;
+        }
+        linked = main.remove(uuid);
+        if (linked != null) {
+            mainWeight -= linked.weight;
+        }
+    }
+
+    /**
+     * Move entries which do not fit into window to main. Each of them is admitted only
+     * if it is used more often than victim from main, otherwise it is evicted itself.
+     * Has to be called under lock.
+     *
+     * @return evicted entries
+     */
+    private List<Entry> evict() {
+        drainReads();
+
+        ArrayDeque<Entry> candidates = new ArrayDeque<>();
+        Iterator<Entry> it = window.values().iterator();
+        while (windowWeight > windowMaxWeight && it.hasNext()) {
+            Entry candidate = it.next();
+            it.remove();
+            windowWeight -= candidate.weight;
+            candidates.add(candidate);
+        }
+
+        List<Entry> evicted = new ArrayList<>();
+        for (Entry candidate : candidates) {
+            main.put(candidate.uuid, candidate);
+            mainWeight += candidate.weight;
+
+            while (windowWeight + mainWeight > maxWeight) {
+                Entry victim = main.values().iterator().next();
+                if (victim == candidate) {
+                    break;
+                }
+
+                Entry loser = sketch.frequency(candidate.uuid) > sketch.frequency(victim.uuid) ? victim : candidate;
+                main.remove(loser.uuid);
+                mainWeight -= loser.weight;
+                evicted.add(loser);
+                if (loser == candidate) {
+                    break;
+                }
+            }
+        }
+
+        // still too big, evict least recently used entries
+        while (windowWeight + mainWeight > maxWeight) {
+            LinkedHashMap<UUID, Entry> segment = main.isEmpty() ? window : main;
+            Entry victim = segment.values().iterator().next();
+            segment.remove(victim.uuid);
+            if (segment == main) {
+                mainWeight -= victim.weight;
+            } else {
+                windowWeight -= victim.weight;
+            }
+            evicted.add(victim);
+        }
+
+        evicted.removeIf(e -> !cache.remove(e.uuid, e));
+        return evicted;
     }
 }
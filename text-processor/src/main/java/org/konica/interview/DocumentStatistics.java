@@ -0,0 +1,248 @@
+package org.konica.interview;
+
+import java.util.Map;
+
+/** Represents statistics engine
+ *
+ * Computes paragraph count, paragraph lengths and word occurrences in one
+ * linear pass over text of document. Text can be fed at once or in chunks,
+ * paragraphs are never materialized as separate strings.
+ *
+ * Paragraph is every non empty run of characters between two '\n' characters.
+ * Words are separated the same way as String.split("\\W+") separates them.
+ *
+ * @see Document
+ * @see WordTokenizer
+ */
+public class DocumentStatistics {
+    private static final int CHUNK_SIZE = 8192;
+
+    private int paragraphCount;
+    private int paragraphMaxLength;
+    private int paragraphMinLength;
+    private long paragraphLengthSum;
+    private long length;
+    private WordCounter wordCounts;
+
+    private WordTokenizer tokenizer;
+    private int paragraphLength;
+    private char[] chunk;
+
+    /**
+     * Constructor for DocumentStatistics
+     *
+     * @param countWords if false only paragraph statistics are computed
+     */
+    public DocumentStatistics(boolean countWords) {
+        this.paragraphCount = 0;
+        this.paragraphMaxLength = Integer.MIN_VALUE;
+        this.paragraphMinLength = Integer.MAX_VALUE;
+        this.paragraphLengthSum = 0;
+        this.length = 0;
+        this.wordCounts = countWords ? new WordCounter() : null;
+        this.tokenizer = countWords ? new WordTokenizer(wordCounts) : null;
+        this.paragraphLength = 0;
+        this.chunk = null;
+    }
+
+    /**
+     * Restore finished statistics, e.g. statistics read from database, so that statistics
+     * of following text can be merged to them. Words are counted in order in which they
+     * are given.
+     *
+     * @param paragraphCount paragraph count
+     * @param paragraphMaxLength length of the longest paragraph
+     * @param paragraphMinLength length of the shortest paragraph
+     * @param paragraphLengthSum sum of lengths of all paragraphs
+     * @param length number of characters of text, including line breaks
+     * @param wordFrequency word occurrences
+     * @return finished statistics
+     */
+    public static DocumentStatistics restore(int paragraphCount, int paragraphMaxLength, int paragraphMinLength,
+                                             long paragraphLengthSum, long length, Map<String, Long> wordFrequency) {
+        DocumentStatistics statistics = new DocumentStatistics(false);
+        statistics.paragraphCount = paragraphCount;
+        if (paragraphCount > 0) {
+            statistics.paragraphMaxLength = paragraphMaxLength;
+            statistics.paragraphMinLength = paragraphMinLength;
+        }
+        statistics.paragraphLengthSum = paragraphLengthSum;
+        statistics.length = length;
+
+        statistics.wordCounts = new WordCounter();
+        for (Map.Entry<String, Long> e : wordFrequency.entrySet()) {
+            statistics.wordCounts.add(e.getKey(), e.getValue());
+        }
+        return statistics;
+    }
+
+    /**
+     * Feed text to statistics.
+     *
+     * @param text chunk of document text
+     */
+    public void accept(CharSequence text) {
+        accept(text, 0, text.length());
+    }
+
+    /**
+     * Feed part of text to statistics.
+     *
+     * @param text document text
+     * @param from index of first character
+     * @param to index after last character
+     */
+    public void accept(CharSequence text, int from, int to) {
+        if (chunk == null) {
+            chunk = new char[CHUNK_SIZE];
+        }
+
+        for (int start = from; start < to; start += CHUNK_SIZE) {
+            int end = Math.min(to, start + CHUNK_SIZE);
+            if (text instanceof String) {
+                ((String) text).getChars(start, end, chunk, 0);
+            } else {
+                for (int i = start; i < end; i++) {
+                    chunk[i - start] = text.charAt(i);
+                }
+            }
+            accept(chunk, 0, end - start);
+        }
+    }
+
+    /**
+     * Feed text to statistics.
+     *
+     * @param buffer holds chunk of document text
+     * @param offset index of first character of chunk
+     * @param length number of characters in chunk
+     */
+    public void accept(char[] buffer, int offset, int length) {
+        int end = offset + length;
+        this.length += length;
+        for (int i = offset; i < end; i++) {
+            char c = buffer[i];
+            if (c == '\n') {
+                if (tokenizer != null) {
+                    tokenizer.endParagraph(buffer, i);
+                }
+                endParagraph();
+                continue;
+            }
+
+            paragraphLength++;
+            if (tokenizer != null) {
+                tokenizer.next(buffer, i, c);
+            }
+        }
+
+        if (tokenizer != null) {
+            tokenizer.endChunk(buffer, end);
+        }
+    }
+
+    /**
+     * Close paragraph which is being processed. Has to be called after last chunk of text.
+     * Buffers used while text is fed are released, so finished statistics hold only counts.
+     */
+    public void finish() {
+        if (tokenizer != null) {
+            tokenizer.finish();
+        }
+        endParagraph();
+
+        tokenizer = null;
+        chunk = null;
+    }
+
+    /**
+     * Add finished statistics of text which follows text of these finished statistics.
+     * Word counts are merged in order, so ties in word frequency stay ordered by first
+     * occurrence. Text has to be split between paragraphs, right after '\n'.
+     *
+     * @param other statistics of following text
+     */
+    public void merge(DocumentStatistics other) {
+        paragraphCount += other.paragraphCount;
+        paragraphMaxLength = Math.max(paragraphMaxLength, other.paragraphMaxLength);
+        paragraphMinLength = Math.min(paragraphMinLength, other.paragraphMinLength);
+        paragraphLengthSum += other.paragraphLengthSum;
+        length += other.length;
+
+        if (wordCounts != null && other.wordCounts != null) {
+            for (int i = 0; i < other.wordCounts.size(); i++) {
+                wordCounts.add(other.wordCounts.word(i), other.wordCounts.count(i));
+            }
+        }
+    }
+
+    /**
+     * @return paragraph count
+     */
+    public int getParagraphCount() {
+        return paragraphCount;
+    }
+
+    /**
+     * @return length of the longest paragraph, 0 if there are no paragraphs
+     */
+    public int getParagraphMaxLength() {
+        return paragraphCount == 0 ? 0 : paragraphMaxLength;
+    }
+
+    /**
+     * @return length of the shortest paragraph, 0 if there are no paragraphs
+     */
+    public int getParagraphMinLength() {
+        return paragraphCount == 0 ? 0 : paragraphMinLength;
+    }
+
+    /**
+     * @return average length of the paragraph, 0 if there are no paragraphs
+     */
+    public int getParagraphAvgLength() {
+        return paragraphCount == 0 ? 0 : (int) (paragraphLengthSum / paragraphCount);
+    }
+
+    /**
+     * @return number of characters fed to statistics, including line breaks
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return sum of lengths of all paragraphs
+     */
+    public long getParagraphLengthSum() {
+        return paragraphLengthSum;
+    }
+
+    /**
+     * @return word occurrences, null if words were not counted
+     */
+    public WordCounter getWordCounts() {
+        return wordCounts;
+    }
+
+    /**
+     * @return approximate size of statistics in heap in bytes
+     */
+    public long estimateSize() {
+        return 64 + (wordCounts == null ? 0 : wordCounts.estimateSize());
+    }
+
+    /**
+     * Close paragraph which is being processed and record its length.
+     */
+    private void endParagraph() {
+        if (paragraphLength > 0) {
+            paragraphCount++;
+            paragraphMaxLength = Math.max(paragraphMaxLength, paragraphLength);
+            paragraphMinLength = Math.min(paragraphMinLength, paragraphLength);
+            paragraphLengthSum += paragraphLength;
+        }
+
+        paragraphLength = 0;
+    }
+}
@@ -2,10 +2,14 @@ package org.konica.interview;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import com.fasterxml.jackson.databind.ser.FilterProvider;
-import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
-import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
@@ -13,85 +17,188 @@ import com.mongodb.client.MongoDatabase;
 
 import com.mongodb.client.result.DeleteResult;
 import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.types.Binary;
+import org.bson.codecs.UuidCodec;
+import org.bson.codecs.configuration.CodecRegistries;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.bson.conversions.Bson;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /** Represents storage for documents
  *
  * This storage is backed by cache and DB. When document is stored, it is stored in
  * cache and after some time (ttl attribute) it is removed from cache and stored in
  * database from where it can be restored later using respective UUID.
+ *
+ * Documents leaving cache are written to database in batches by DocumentWriter.
+ * On shutdown all cached documents are handed over to writer and written.
+ *
+ * Statistics are computed once, when document is stored to database, and they are
+ * stored as typed fields next to raw content. Statistics can be read by projection
+ * without fetching content. Documents stored by older versions hold whole Document
+ * serialized to JSON in content field and are still readable.
+ *
+ * Text can be appended to stored Document. Document is loaded to cache, its stored
+ * statistics are restored and only statistics of appended text are computed and
+ * merged to them. Sum of paragraph lengths is stored for this, so average length
+ * can be updated exactly. Appended text is stored as chunks in array next to content.
+ * Document which was stored already is written by update which sets only statistics
+ * and chunks appended since, content is not written again. Appends to one Document
+ * are serialized, and Document read from database or off-heap cache never replaces
+ * Document which is cached already, so no append is lost.
+ *
+ * Cached Document whose statistics were all derived is written to database without
+ * waiting until it leaves cache, then its text is dropped from cache and only its
+ * statistics are kept. Text can be appended to it without loading its text again.
+ * Document which is stored already is not written again when it leaves cache.
+ *
+ * Documents are keyed by UUID stored as binary _id (standard UUID representation),
+ * so every lookup uses the primary index. Older versions keyed documents by string
+ * field id, such documents are rewritten to new key by migrate. Until they are
+ * migrated, document not found by _id is looked up by id and rewritten to new key
+ * when it is found. Whether there are any such documents is checked once, so
+ * lookups of migrated database do not pay for it.
+ *
+ * Optionally documents leaving cache are also kept outside of heap in OffHeapCache,
+ * which is checked before database. Hits of each tier are counted.
+ *
+ * Database is accessed by bounded executor, so requests which have to wait for
+ * database are refused when database is overloaded while documents in memory
+ * are still served.
+ *
+ * @see DocumentCache
+ * @see DocumentWriter
+ * @see OffHeapCache
  */
 public class DocumentStore {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentStore.class);
+
     private DocumentCache cache;
+    private DocumentWriter writer;
+    private OffHeapCache offHeapCache;
+    private BoundedExecutor storage;
+    private boolean compress;
     private MongoCollection<org.bson.Document> db;
     private ObjectMapper objectMapper;
-    private FilterProvider all;
 
-    /**
-     * Periodically check for cache entries which are older than TTL value.
-     * Those which are marked as dead are stored in database.
-     */
-    public class CacheInvalidator implements Runnable {
-        private int ttl;
+    private final LongAdder heapHits = new LongAdder();
+    private final LongAdder offHeapHits = new LongAdder();
+    private final LongAdder databaseHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
 
-        /**
-         * @param ttl Time To Live for cache entry
-         */
-        public CacheInvalidator(int ttl) {
-            this.ttl = ttl;
-        }
+    private final ReentrantLock[] appendLocks;
 
-        private void safeStoreToDb(final UUID uuid, final org.konica.interview.Document document) {
-            try {
-                DocumentStore.this.storeDb(uuid, document);
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
-            }
-        }
+    private volatile Boolean legacyDocuments;
 
-        /**
-         * Periodically check for dead documents. If found some, store them in database.
-         */
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    Thread.sleep(ttl * 1000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+    public static final String ID                   = "_id";
+    public static final String LEGACY_ID            = "id";
+    public static final String CONTENT              = "content";
+    public static final String CONTENT_DEFLATE      = "contentDeflate";
+    public static final String CONTENT_LENGTH       = "contentLength";
+    public static final String APPENDED             = "appended";
+    public static final String PARAGRAPH_COUNT      = "paragraphCount";
+    public static final String PARAGRAPH_MAX_LENGTH = "paragraphMaxLength";
+    public static final String PARAGRAPH_MIN_LENGTH = "paragraphMinLength";
+    public static final String PARAGRAPH_AVG_LENGTH = "paragraphAvgLength";
+    public static final String PARAGRAPH_LENGTH_SUM = "paragraphLengthSum";
+    public static final String TEXT_LENGTH          = "textLength";
+    public static final String WORD_FREQUENCY       = "wordFrequency";
+    public static final String WORD                 = "word";
+    public static final String COUNT                = "count";
 
-                HashMap<UUID, org.konica.interview.Document> dead = cache.invalidate(ttl);
-                if (dead == null) {
-                    continue;
-                }
-                dead.forEach(this::safeStoreToDb);
-            }
-        }
-    }
+    public static final long SHUTDOWN_TIMEOUT = 30000;
+    public static final int MIGRATION_BATCH_SIZE = 500;
+    public static final int APPEND_LOCKS = 64;
+
+    private static final Histogram findLatency = Metrics.histogram("text_processor_database_seconds",
+            "Latency of database operations", Metrics.labels("operation", "find"), Histogram.latency());
+    private static final Histogram deleteLatency = Metrics.histogram("text_processor_database_seconds",
+            "Latency of database operations", Metrics.labels("operation", "delete"), Histogram.latency());
+    private static final Histogram migrateLatency = Metrics.histogram("text_processor_database_seconds",
+            "Latency of database operations", Metrics.labels("operation", "migrate"), Histogram.latency());
 
     /**
      * Constructor for DocumentStore
      *
      * Init cache and connect to a database.
      * @param location URL of database
+     * @param ttl time in milliseconds for which document stays in cache without being accessed
+     * @param tick precision of cache expiry in milliseconds
+     * @param maxCacheBytes maximum approximate size of cached documents in bytes
+     * @param compress whether idle cached documents and stored content should be compressed
+     * @param offHeapBytes size of off-heap cache in bytes, 0 disables it
+     * @param storage executor of database queries
      */
-    public DocumentStore(String location) {
-        SimpleBeanPropertyFilter propertyFilter = SimpleBeanPropertyFilter.serializeAllExcept("");
-        all = new SimpleFilterProvider().addFilter("Document", propertyFilter);
+    public DocumentStore(String location, long ttl, long tick, long maxCacheBytes, boolean compress, int offHeapBytes,
+                         BoundedExecutor storage) {
+        this.compress = compress;
+        this.storage = storage;
+        this.offHeapCache = offHeapBytes > 0 ? new OffHeapCache(offHeapBytes) : null;
+        this.appendLocks = new ReentrantLock[APPEND_LOCKS];
+        for (int i = 0; i < appendLocks.length; i++) {
+            appendLocks[i] = new ReentrantLock();
+        }
         objectMapper = new ObjectMapper();
 
-        cache = new DocumentCache();
-
-        Thread cacheInvalidator = new Thread(new CacheInvalidator(5));
-        cacheInvalidator.start();
-
         MongoClient mongoClient = MongoClients.create(location);
         MongoDatabase db = mongoClient.getDatabase("text-processor");
-        this.db = db.getCollection("documents");
+        this.db = db.getCollection("documents").withCodecRegistry(CodecRegistries.fromRegistries(
+                CodecRegistries.fromCodecs(new UuidCodec(UuidRepresentation.STANDARD)),
+                MongoClientSettings.getDefaultCodecRegistry()));
+
+        writer = new DocumentWriter(this.db, this::toWrite, this::toDelete);
+        cache = new DocumentCache(ttl, tick, maxCacheBytes, compress, this::evicted, writer::submit);
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        String help = "Lookups of documents by tier which answered them";
+        Metrics.counter("text_processor_document_lookups_total", help, Metrics.labels("tier", "heap"), heapHits::sum);
+        Metrics.counter("text_processor_document_lookups_total", help, Metrics.labels("tier", "off_heap"), offHeapHits::sum);
+        Metrics.counter("text_processor_document_lookups_total", help, Metrics.labels("tier", "database"), databaseHits::sum);
+        Metrics.counter("text_processor_document_lookups_total", help, Metrics.labels("tier", "miss"), misses::sum);
+
+        Metrics.gauge("text_processor_document_cache_bytes", "Approximate size of cached documents", "", cache::weightedSize);
+        Metrics.gauge("text_processor_document_cache_documents", "Number of cached documents", "", cache::size);
+        Metrics.counter("text_processor_document_cache_evictions_total", "Documents evicted from cache because it was full",
+                "", cache::getEvictions);
+        Metrics.counter("text_processor_document_cache_expirations_total", "Documents removed from cache because they were idle",
+                "", cache::getExpirations);
+        Metrics.gauge("text_processor_off_heap_cache_documents", "Number of documents in off-heap cache", "", this::offHeapSize);
+        Metrics.counter("text_processor_compression_raw_bytes_total", "Bytes of all texts compressed since start, before compression",
+                "", CompressedText::getRawBytesTotal);
+        Metrics.counter("text_processor_compression_compressed_bytes_total", "Bytes of all texts compressed since start, after compression",
+                "", CompressedText::getCompressedBytesTotal);
+    }
+
+    /**
+     * Hand over Document which left cache to off-heap cache and to database, unless
+     * it is stored in database already.
+     *
+     * @param uuid of Document
+     * @param document Document which left cache
+     */
+    private void evicted(UUID uuid, org.konica.interview.Document document) {
+        if (offHeapCache != null) {
+            offHeapCache.put(uuid, document);
+        }
+        if (!document.textStored()) {
+            writer.submit(uuid, document);
+        }
     }
 
     /**
@@ -106,14 +213,184 @@ public class DocumentStore {
     }
 
     /**
-     * Store Document and UUID associated with that Document to database
+     * Stop expiry of cached documents and write all of them to database.
+     */
+    public void shutdown() {
+        cache.shutdown();
+        cache.flush();
+        writer.close(SHUTDOWN_TIMEOUT);
+        logger.info("Document store was flushed");
+    }
+
+    /**
+     * Create write of Document and UUID associated with that Document to database.
+     * Statistics are computed and stored together with content, content is compressed
+     * if compression is enabled. Document which was stored already is written by update
+     * of its statistics and of chunks appended since it was stored.
      * @param uuid of Document
      * @param document Document to be stored
+     * @return upsert of Document or update of stored Document
+     */
+    private WriteModel<Document> toWrite(UUID uuid, org.konica.interview.Document document) {
+        // statistics and chunks have to be of the same version
+        synchronized (document) {
+            return toWrite(uuid, document, document.storedVersion());
+        }
+    }
+
+    private WriteModel<Document> toWrite(UUID uuid, org.konica.interview.Document document, int storedVersion) {
+        document.parseStatistics();
+
+        List<Document> words = new ArrayList<>(document.getWordFrequency().size());
+        for (Map.Entry<String, Long> e : document.getWordFrequency().entrySet()) {
+            words.add(new Document(WORD, e.getKey()).append(COUNT, e.getValue()));
+        }
+
+        Document fields = new Document(PARAGRAPH_COUNT, document.getParagraphCount())
+                .append(PARAGRAPH_MAX_LENGTH, document.getParagraphMaxLength())
+                .append(PARAGRAPH_MIN_LENGTH, document.getParagraphMinLength())
+                .append(PARAGRAPH_AVG_LENGTH, document.getParagraphAvgLength())
+                .append(PARAGRAPH_LENGTH_SUM, document.paragraphLengthSum())
+                .append(TEXT_LENGTH, document.textLength())
+                .append(WORD_FREQUENCY, words);
+
+        if (storedVersion > 0) {
+            // chunk positions in array make repeated update idempotent
+            List<String> chunks = document.appended(storedVersion);
+            for (int i = 0; i < chunks.size(); i++) {
+                fields.append(APPENDED + "." + (storedVersion + i), chunks.get(i));
+            }
+            return new UpdateOneModel<>(new Document(ID, uuid), new Document("$set", fields), new UpdateOptions().upsert(false));
+        }
+        if (storedVersion == 0) {
+            fields.append(APPENDED, document.appended(0));
+            return new UpdateOneModel<>(new Document(ID, uuid), new Document("$set", fields), new UpdateOptions().upsert(false));
+        }
+
+        Document unset = new Document();
+        if (compress) {
+            document.compress();
+        }
+
+        CompressedText compressed = document.compressed();
+        if (compressed != null) {
+            fields.append(CONTENT_DEFLATE, new Binary(compressed.bytes())).append(CONTENT_LENGTH, compressed.length());
+            unset.append(CONTENT, "");
+        } else {
+            String text = document.baseText();
+            if (text != null) {
+                fields.append(CONTENT, text);
+                unset.append(CONTENT_DEFLATE, "").append(CONTENT_LENGTH, "");
+            }
+        }
+        fields.append(APPENDED, document.appended(0));
+
+        Document update = new Document("$set", fields);
+        if (!unset.isEmpty()) {
+            update.append("$unset", unset);
+        }
+        return new UpdateOneModel<>(new Document(ID, uuid), update, new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Create delete of Document from database.
+     * @param uuid of Document
+     * @return delete of Document
+     */
+    private WriteModel<Document> toDelete(UUID uuid) {
+        return new DeleteOneModel<>(new Document(ID, uuid));
+    }
+
+    /**
+     * @return approximate size of cached documents in bytes
+     */
+    public long cachedBytes() {
+        return cache.weightedSize();
+    }
+
+    /**
+     * Rewrite documents keyed by string field id to binary _id. Document which was already
+     * stored under new key is newer and is kept as it is. Migration can be interrupted and
+     * run again.
+     *
+     * @return number of migrated documents
+     */
+    public long migrate() {
+        long migrated = 0;
+        List<WriteModel<Document>> batch = new ArrayList<>();
+
+        try (MongoCursor<Document> cursor = db.find(Filters.exists(LEGACY_ID)).iterator()) {
+            while (cursor.hasNext()) {
+                Document d = cursor.next();
+                Object legacyId = d.remove(ID);
+                UUID uuid = UUID.fromString(d.remove(LEGACY_ID).toString());
+
+                batch.add(new UpdateOneModel<>(new Document(ID, uuid), new Document("$setOnInsert", d), new UpdateOptions().upsert(true)));
+                batch.add(new DeleteOneModel<>(new Document(ID, legacyId)));
+
+                if (batch.size() >= 2 * MIGRATION_BATCH_SIZE) {
+                    db.bulkWrite(batch);
+                    migrated += batch.size() / 2;
+                    batch.clear();
+                    logger.info("Migrated " + migrated + " documents");
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            db.bulkWrite(batch);
+            migrated += batch.size() / 2;
+        }
+
+        legacyDocuments = false;
+        logger.info("Migration finished, " + migrated + " documents migrated");
+        return migrated;
+    }
+
+    /**
+     * @return true if database may hold documents keyed by string field id
      * @throws IOException
      */
-    private void storeDb(UUID uuid, org.konica.interview.Document document) throws IOException {
-        String doc = objectMapper.writer(all).writeValueAsString(document);
-        db.updateOne(new Document("id", uuid.toString()), new Document("$set", new Document("content", doc)), new UpdateOptions().upsert(true));
+    private boolean hasLegacyDocuments() throws IOException {
+        Boolean legacy = legacyDocuments;
+        if (legacy == null) {
+            legacy = onStorage(findLatency, () -> db.find(Filters.exists(LEGACY_ID)).projection(Projections.include(ID)).first() != null);
+            if (legacy) {
+                logger.warn("Documents stored by older versions found, they are migrated when they are read, "
+                        + "run with --migrate to migrate all of them");
+            }
+            legacyDocuments = legacy;
+        }
+        return legacy;
+    }
+
+    /**
+     * Find Document stored by older version under string field id and rewrite it to binary _id.
+     *
+     * @param uuid uuid associated with Document
+     * @return Document keyed by binary _id or null if there is no such Document
+     * @throws IOException
+     */
+    private Document findLegacy(UUID uuid) throws IOException {
+        if (!hasLegacyDocuments()) {
+            return null;
+        }
+
+        Document d = onStorage(findLatency, () -> db.find(new Document(LEGACY_ID, uuid.toString())).first());
+        if (d == null) {
+            return null;
+        }
+
+        Object legacyId = d.remove(ID);
+        d.remove(LEGACY_ID);
+
+        List<WriteModel<Document>> migration = new ArrayList<>(2);
+        migration.add(new UpdateOneModel<>(new Document(ID, uuid), new Document("$setOnInsert", d), new UpdateOptions().upsert(true)));
+        migration.add(new DeleteOneModel<>(new Document(ID, legacyId)));
+        onStorage(migrateLatency, () -> db.bulkWrite(migration));
+
+        d.put(ID, uuid);
+        return d;
     }
 
     /**
@@ -122,11 +399,13 @@ public class DocumentStore {
      * @param uuid uuid associated with Document which should be deleted
      * @return result of operation
      */
-    public boolean delete(UUID uuid) {
+    public boolean delete(UUID uuid) throws IOException {
         boolean cd = cache.delete(uuid);
+        boolean od = offHeapCache != null && offHeapCache.remove(uuid);
+        boolean wd = writer.cancel(uuid);
         boolean dd = deleteFromDb(uuid);
 
-        return cd || dd;
+        return cd || od || wd || dd;
     }
 
     /**
@@ -134,12 +413,46 @@ public class DocumentStore {
      *
      * @param uuid uuid associated with Document which should be deleted
      * @return result of operation
+     * @throws IOException
      */
-    private boolean deleteFromDb(UUID uuid) {
-        DeleteResult res = db.deleteOne(new Document("id", uuid.toString()));
+    private boolean deleteFromDb(UUID uuid) throws IOException {
+        DeleteResult res = onStorage(deleteLatency, () -> db.deleteOne(new Document(ID, uuid)));
+        if (res.getDeletedCount() == 0 && hasLegacyDocuments()) {
+            res = onStorage(deleteLatency, () -> db.deleteOne(new Document(LEGACY_ID, uuid.toString())));
+        }
         return res.wasAcknowledged();
     }
 
+    /**
+     * Run database query on storage executor and record its latency. Time spent by
+     * request in database, including waiting for executor, is added to its timing.
+     *
+     * @param latency receives latency of query, time spent waiting for executor is not included
+     * @param query database query
+     * @return result of query
+     * @throws IOException
+     * @throws java.util.concurrent.RejectedExecutionException if database is overloaded
+     */
+    private <T> T onStorage(Histogram latency, Callable<T> query) throws IOException {
+        long phase = RequestTiming.start();
+        try {
+            return storage.call(() -> {
+                long start = System.nanoTime();
+                try {
+                    return query.call();
+                } finally {
+                    latency.record(System.nanoTime() - start);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            RequestTiming.end(RequestTiming.DATABASE, phase);
+        }
+    }
+
     /**
      * Retrieve Document either from cache or database
      * @param uuid uuid associated with Document which should be returned
@@ -147,16 +460,279 @@ public class DocumentStore {
      * @throws IOException
      */
     public org.konica.interview.Document get(UUID uuid) throws  IOException {
-        org.konica.interview.Document document = cache.get(uuid);
+        org.konica.interview.Document document = getFromMemory(uuid);
 
         if (document == null) {
-            org.bson.Document d = this.db.find(new org.bson.Document("id", uuid.toString())).first();
+            document = load(uuid);
+            if (document != null) {
+                document = cache.storeIfAbsent(uuid, document);
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Read whole Document from database together with appended chunks. Document whose
+     * statistics are restored is marked as stored.
+     *
+     * @param uuid uuid associated with Document which should be returned
+     * @return Document or null if there is no such Document
+     * @throws IOException
+     */
+    private org.konica.interview.Document load(UUID uuid) throws IOException {
+        org.bson.Document d = onStorage(findLatency, () -> this.db.find(new org.bson.Document(ID, uuid)).first());
+        if (d == null) {
+            d = findLegacy(uuid);
+        }
+
+        if (d == null) {
+            misses.increment();
+            return null;
+        }
+        databaseHits.increment();
+
+        org.konica.interview.Document document;
+        if (d.containsKey(CONTENT_DEFLATE)) {
+            Binary bytes = d.get(CONTENT_DEFLATE, Binary.class);
+            document = new org.konica.interview.Document(new CompressedText(bytes.getData(), d.getInteger(CONTENT_LENGTH)));
+            restoreStatistics(d, document);
+        } else if (d.containsKey(PARAGRAPH_COUNT)) {
+            document = new org.konica.interview.Document(d.getString(CONTENT));
+            restoreStatistics(d, document);
+        } else {
+            return objectMapper.readValue(d.get(CONTENT).toString(), org.konica.interview.Document.class);
+        }
+
+        if (d.containsKey(APPENDED)) {
+            document.restoreAppended(d.getList(APPENDED, String.class));
+        }
+        if (keepStatistics(d, document)) {
+            document.markStored(document.version());
+        }
+        return document;
+    }
 
-            if (d == null) return null;
+    /**
+     * Append text to stored Document. Document is moved to cache, so it is written to
+     * database again when it leaves cache, and its copy in off-heap cache is dropped.
+     * Appends to the same Document are serialized, so each of them appends to Document
+     * which holds all previous appends.
+     *
+     * @param uuid uuid associated with Document to which text is appended
+     * @param text appended text
+     * @return Document with appended text or null if there is no such Document
+     * @throws IOException
+     */
+    public org.konica.interview.Document append(UUID uuid, String text) throws IOException {
+        ReentrantLock lock = appendLocks[(uuid.hashCode() & Integer.MAX_VALUE) % appendLocks.length];
+        lock.lock();
+        try {
+            org.konica.interview.Document document = get(uuid);
+            if (document == null) {
+                return null;
+            }
 
-            document = objectMapper.readValue(d.get("content").toString(), org.konica.interview.Document.class);
+            document.append(text);
+            if (offHeapCache != null) {
+                offHeapCache.remove(uuid);
+            }
             cache.store(uuid, document);
+            return document;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieve only statistics of Document. Cached Document is returned as it is, otherwise
+     * statistics are read from off-heap cache or only requested statistics are read from
+     * database, in both cases content is not fetched. Documents
+     * stored without statistics are loaded whole.
+     *
+     * @param uuid uuid associated with Document which should be returned
+     * @param wordLimit maximum number of words of word frequency to be read
+     * @param fields statistics to be read, any of PARAGRAPH_COUNT, PARAGRAPH_MAX_LENGTH,
+     *               PARAGRAPH_MIN_LENGTH, PARAGRAPH_AVG_LENGTH, WORD_FREQUENCY
+     * @return Document which holds requested statistics
+     * @throws IOException
+     */
+    public org.konica.interview.Document getStatistics(UUID uuid, int wordLimit, String... fields) throws IOException {
+        org.konica.interview.Document document = getFromHeap(uuid);
+        if (document != null) {
+            return document;
+        }
+
+        if (offHeapCache != null) {
+            document = offHeapCache.getStatistics(uuid, wordLimit);
+            if (document != null) {
+                offHeapHits.increment();
+                return document;
+            }
+        }
+
+        List<Bson> projection = new ArrayList<>();
+        projection.add(Projections.include(fields));
+        projection.add(Projections.include(PARAGRAPH_COUNT));
+        if (wordLimit < Integer.MAX_VALUE) {
+            projection.add(Projections.slice(WORD_FREQUENCY, wordLimit));
+        }
+
+        org.bson.Document d = onStorage(findLatency, () -> this.db.find(new org.bson.Document(ID, uuid))
+                .projection(Projections.fields(projection))
+                .first());
+
+        if (d == null) {
+            if (hasLegacyDocuments()) {
+                return get(uuid);
+            }
+            misses.increment();
+            return null;
+        }
+
+        if (!d.containsKey(PARAGRAPH_COUNT)) {
+            return get(uuid);
+        }
+        databaseHits.increment();
+
+        document = new org.konica.interview.Document();
+        restoreStatistics(d, document);
+        return document;
+    }
+
+    /**
+     * Retrieve Document from cache, from queue of documents waiting to be written or from
+     * off-heap cache. Document found in off-heap cache is moved back to cache.
+     *
+     * @param uuid uuid associated with Document which should be returned
+     * @return Document or null if it is not in memory
+     */
+    private org.konica.interview.Document getFromMemory(UUID uuid) {
+        org.konica.interview.Document document = getFromHeap(uuid);
+        if (document != null) {
+            return document;
+        }
+
+        if (offHeapCache != null) {
+            document = offHeapCache.get(uuid);
+            if (document != null) {
+                offHeapHits.increment();
+                return cache.storeIfAbsent(uuid, document);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieve Document from cache or from queue of documents waiting to be written.
+     *
+     * @param uuid uuid associated with Document which should be returned
+     * @return Document or null if it is not in heap
+     */
+    private org.konica.interview.Document getFromHeap(UUID uuid) {
+        org.konica.interview.Document document = cache.get(uuid);
+        if (document == null) {
+            document = writer.get(uuid);
+            if (document != null) {
+                document = cache.storeIfAbsent(uuid, document);
+            }
+        }
+        if (document != null) {
+            heapHits.increment();
         }
         return document;
     }
+
+    /**
+     * @return number of lookups answered by cache on heap
+     */
+    public long getHeapHits() {
+        return heapHits.sum();
+    }
+
+    /**
+     * @return number of lookups answered by off-heap cache
+     */
+    public long getOffHeapHits() {
+        return offHeapHits.sum();
+    }
+
+    /**
+     * @return number of lookups answered by database
+     */
+    public long getDatabaseHits() {
+        return databaseHits.sum();
+    }
+
+    /**
+     * @return number of lookups of documents which do not exist
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of documents in off-heap cache
+     */
+    public int offHeapSize() {
+        return offHeapCache == null ? 0 : offHeapCache.size();
+    }
+
+    /**
+     * Let Document keep statistics read from database, so that they are not computed again
+     * from its content. Documents stored without sum of paragraph lengths compute them, so
+     * do compressed documents stored without length of text in characters.
+     *
+     * @param d whole document read from database
+     * @param document Document which keeps statistics
+     * @return true if statistics were kept
+     */
+    private static boolean keepStatistics(org.bson.Document d, org.konica.interview.Document document) {
+        if (!d.containsKey(PARAGRAPH_LENGTH_SUM) || !d.containsKey(WORD_FREQUENCY)) {
+            return false;
+        }
+
+        long length;
+        if (d.containsKey(TEXT_LENGTH)) {
+            length = d.getLong(TEXT_LENGTH);
+        } else if (d.containsKey(CONTENT)) {
+            length = d.getString(CONTENT).length();
+        } else {
+            return false;
+        }
+
+        document.keepStatistics(DocumentStatistics.restore(d.getInteger(PARAGRAPH_COUNT),
+                d.getInteger(PARAGRAPH_MAX_LENGTH), d.getInteger(PARAGRAPH_MIN_LENGTH),
+                d.getLong(PARAGRAPH_LENGTH_SUM), length, document.getWordFrequency()));
+        return true;
+    }
+
+    /**
+     * Set statistics read from database to Document.
+     *
+     * @param d document read from database
+     * @param document Document which receives statistics
+     */
+    @SuppressWarnings("unchecked")
+    private static void restoreStatistics(org.bson.Document d, org.konica.interview.Document document) {
+        if (d.containsKey(PARAGRAPH_COUNT)) {
+            document.setParagraphCount(d.getInteger(PARAGRAPH_COUNT));
+        }
+        if (d.containsKey(PARAGRAPH_MAX_LENGTH)) {
+            document.setParagraphMaxLength(d.getInteger(PARAGRAPH_MAX_LENGTH));
+        }
+        if (d.containsKey(PARAGRAPH_MIN_LENGTH)) {
+            document.setParagraphMinLength(d.getInteger(PARAGRAPH_MIN_LENGTH));
+        }
+        if (d.containsKey(PARAGRAPH_AVG_LENGTH)) {
+            document.setParagraphAvgLength(d.getInteger(PARAGRAPH_AVG_LENGTH));
+        }
+        if (d.containsKey(WORD_FREQUENCY)) {
+            List<org.bson.Document> words = (List<org.bson.Document>) d.get(WORD_FREQUENCY);
+            HashMap<String, Long> wordFrequency = new LinkedHashMap<>(words.size() * 4 / 3 + 1);
+            for (org.bson.Document w : words) {
+                wordFrequency.put(w.getString(WORD), w.getLong(COUNT));
+            }
+            document.setWordFrequency(wordFrequency);
+        }
+    }
 }
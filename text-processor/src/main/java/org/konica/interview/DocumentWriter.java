@@ -0,0 +1,348 @@
+package org.konica.interview;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.WriteModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/** Represents write-behind of documents to database
+ *
+ * Documents are queued and written by one background thread in bulk writes.
+ * Batch is closed when it reaches maxBatchSize documents or maxBatchBytes
+ * of approximate document size. Failed batch is retried with exponential
+ * backoff capped at maxBackoff for as long as it takes, writes are idempotent
+ * so repeating them is safe. Batch is never given up because database is
+ * unavailable, only documents which database itself refuses to write, e.g.
+ * document larger than its limit, are given up, they would be refused again.
+ *
+ * Queue is bounded. When database is slow or unavailable and queue is full,
+ * submitting thread waits, so producers are slowed down instead of piling up
+ * documents in memory or losing them.
+ *
+ * Queued documents which were not written yet can still be read, so they do
+ * not disappear between cache and database. Close writes everything queued.
+ * Document cancelled while its write is in flight is deleted again after
+ * the write, so upsert can not bring back deleted document. Document which
+ * can not be converted to write is given up alone, the rest of batch is
+ * written. Written document is marked as stored, unless text was appended
+ * to it since it was queued.
+ *
+ * Latency and size of bulk writes, queue depth and documents given up are
+ * recorded in Metrics.
+ */
+public class DocumentWriter {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentWriter.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    public static final long DEFAULT_MAX_BATCH_BYTES = 16L * 1024 * 1024;
+    public static final long DEFAULT_BACKOFF = 100;
+    public static final long DEFAULT_MAX_BACKOFF = 10000;
+
+    private static final long POLL_TIMEOUT = 100;
+
+    private static final Histogram writeLatency = Metrics.histogram("text_processor_database_seconds",
+            "Latency of database operations", Metrics.labels("operation", "write"), Histogram.latency());
+    private static final Histogram batchSizes = Metrics.histogram("text_processor_write_batch_documents",
+            "Number of documents in bulk writes", "", new Histogram(1, 2, 10, 1));
+    private static final LongAdder lost = Metrics.counter("text_processor_write_lost_documents_total",
+            "Documents which were given up because database refused to write them", "");
+
+    private final MongoCollection<org.bson.Document> db;
+    private final BiFunction<UUID, Document, WriteModel<org.bson.Document>> toWrite;
+    private final Function<UUID, WriteModel<org.bson.Document>> toDelete;
+    private final BlockingQueue<Write> queue;
+    private final ConcurrentHashMap<UUID, Write> pending;
+    private final int maxBatchSize;
+    private final long maxBatchBytes;
+    private final long backoff;
+    private final long maxBackoff;
+    private final Thread thread;
+
+    private volatile boolean closed;
+
+    /**
+     * Document waiting to be written
+     */
+    private static class Write {
+        private final UUID uuid;
+        private final Document document;
+        private final long weight;
+        private final int version;
+
+        private Write(UUID uuid, Document document) {
+            this.uuid = uuid;
+            this.document = document;
+            this.weight = document.estimateSize();
+            this.version = document.version();
+        }
+    }
+
+    /**
+     * Create writer with default limits and start its thread.
+     *
+     * @param db collection documents are written to
+     * @param toWrite converts document to write operation
+     * @param toDelete creates delete operation of document
+     */
+    public DocumentWriter(MongoCollection<org.bson.Document> db,
+                          BiFunction<UUID, Document, WriteModel<org.bson.Document>> toWrite,
+                          Function<UUID, WriteModel<org.bson.Document>> toDelete) {
+        this(db, toWrite, toDelete, DEFAULT_QUEUE_SIZE, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_BYTES,
+                DEFAULT_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * Create writer and start its thread.
+     *
+     * @param db collection documents are written to
+     * @param toWrite converts document to write operation
+     * @param toDelete creates delete operation of document
+     * @param queueSize maximum number of queued documents
+     * @param maxBatchSize maximum number of documents in one bulk write
+     * @param maxBatchBytes maximum approximate size of documents in one bulk write
+     * @param backoff delay in milliseconds before the first retry, doubled for every next one
+     * @param maxBackoff maximum delay in milliseconds between retries
+     */
+    public DocumentWriter(MongoCollection<org.bson.Document> db,
+                          BiFunction<UUID, Document, WriteModel<org.bson.Document>> toWrite,
+                          Function<UUID, WriteModel<org.bson.Document>> toDelete,
+                          int queueSize, int maxBatchSize, long maxBatchBytes, long backoff, long maxBackoff) {
+        this.db = db;
+        this.toWrite = toWrite;
+        this.toDelete = toDelete;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+        this.pending = new ConcurrentHashMap<>();
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchBytes = maxBatchBytes;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.closed = false;
+
+        Metrics.gauge("text_processor_write_queue_documents", "Documents waiting to be written to database", "", queue::size);
+
+        this.thread = new Thread(this::run, "document-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queue document to be written. Waits while queue is full.
+     *
+     * @param uuid of Document
+     * @param document Document to be written
+     */
+    public void submit(UUID uuid, Document document) {
+        Write write = new Write(uuid, document);
+        pending.put(uuid, write);
+
+        try {
+            queue.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.remove(uuid, write);
+            logger.error("Queueing document " + uuid + " for database was interrupted");
+        }
+    }
+
+    /**
+     * @param uuid of Document
+     * @return queued Document which was not written yet or null
+     */
+    public Document get(UUID uuid) {
+        Write write = pending.get(uuid);
+        return write == null ? null : write.document;
+    }
+
+    /**
+     * Cancel write of queued Document.
+     *
+     * @param uuid of Document
+     * @return true if Document was queued
+     */
+    public boolean cancel(UUID uuid) {
+        return pending.remove(uuid) != null;
+    }
+
+    /**
+     * Stop accepting new batches after queue is empty and wait until everything
+     * queued is written.
+     *
+     * @param timeout maximum time to wait in milliseconds
+     */
+    public void close(long timeout) {
+        closed = true;
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (thread.isAlive()) {
+            logger.error(pending.size() + " documents were not written to database before shutdown");
+        }
+    }
+
+    /**
+     * Collect batches and write them until writer is closed and queue is empty.
+     */
+    private void run() {
+        while (!closed || !queue.isEmpty()) {
+            Write first;
+            try {
+                first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (first == null) {
+                continue;
+            }
+
+            // later write of the same document replaces earlier one
+            LinkedHashMap<UUID, Write> batch = new LinkedHashMap<>();
+            batch.put(first.uuid, first);
+            long bytes = first.weight;
+
+            Write next;
+            while (batch.size() < maxBatchSize && bytes < maxBatchBytes && (next = queue.poll()) != null) {
+                batch.put(next.uuid, next);
+                bytes += next.weight;
+            }
+
+            try {
+                write(new ArrayList<>(batch.values()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                int given = 0;
+                for (Write write : batch.values()) {
+                    if (pending.remove(write.uuid, write)) {
+                        given++;
+                    }
+                }
+                lost.add(given);
+                logger.error("Writing " + given + " documents to database failed, giving up", e);
+            }
+        }
+    }
+
+    /**
+     * Write batch with retries. Documents deleted meanwhile are skipped, documents
+     * deleted while batch was being written are deleted from database again.
+     * Written documents are marked as stored.
+     *
+     * @param batch queued documents
+     * @throws InterruptedException
+     */
+    private void write(List<Write> batch) throws InterruptedException {
+        List<Write> writes = new ArrayList<>(batch.size());
+        List<WriteModel<org.bson.Document>> models = new ArrayList<>(batch.size());
+        for (Write write : batch) {
+            if (pending.get(write.uuid) != write) {
+                continue;
+            }
+
+            try {
+                models.add(toWrite.apply(write.uuid, write.document));
+                writes.add(write);
+            } catch (RuntimeException e) {
+                if (pending.remove(write.uuid, write)) {
+                    lost.increment();
+                }
+                logger.error("Document " + write.uuid + " can not be written to database, giving up", e);
+            }
+        }
+
+        if (models.isEmpty()) {
+            return;
+        }
+
+        batchSizes.record(models.size());
+        Set<Integer> refused = bulkWrite(models);
+
+        // document which is no longer pending and was not replaced by newer write was deleted meanwhile
+        List<WriteModel<org.bson.Document>> deletes = new ArrayList<>();
+        for (int i = 0; i < writes.size(); i++) {
+            Write write = writes.get(i);
+            if (pending.remove(write.uuid, write)) {
+                if (refused.contains(i)) {
+                    lost.increment();
+                } else {
+                    write.document.markStored(write.version);
+                }
+            } else if (!pending.containsKey(write.uuid)) {
+                deletes.add(toDelete.apply(write.uuid));
+            }
+        }
+
+        if (!deletes.isEmpty() && !bulkWrite(deletes).isEmpty()) {
+            logger.error("Some of " + deletes.size() + " documents deleted while being written may remain in database");
+        }
+    }
+
+    /**
+     * Execute bulk write. Failed write is retried with exponential backoff until it
+     * succeeds, only operations which database refused are not retried.
+     *
+     * @param models write operations
+     * @return indexes of operations refused by database
+     * @throws InterruptedException
+     */
+    private Set<Integer> bulkWrite(List<WriteModel<org.bson.Document>> models) throws InterruptedException {
+        long delay = backoff;
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                db.bulkWrite(models, new BulkWriteOptions().ordered(false));
+                writeLatency.record(System.nanoTime() - start);
+                return Collections.emptySet();
+            } catch (MongoBulkWriteException e) {
+                writeLatency.record(System.nanoTime() - start);
+                if (e.getWriteErrors().isEmpty()) {
+                    // only write concern was not satisfied, operations are repeated
+                    logger.warn("Bulk write of " + models.size() + " operations was not acknowledged, attempt " + attempt
+                            + ", retrying in " + delay + " ms: " + e.getWriteConcernError());
+                } else {
+                    // write is not ordered, all operations but refused ones were applied
+                    Set<Integer> refused = new HashSet<>();
+                    for (BulkWriteError error : e.getWriteErrors()) {
+                        refused.add(error.getIndex());
+                        logger.error("Database refused operation " + error.getIndex() + " of bulk write, giving up: "
+                                + error.getMessage());
+                    }
+                    return refused;
+                }
+            } catch (MongoException e) {
+                writeLatency.record(System.nanoTime() - start);
+                logger.warn("Bulk write of " + models.size() + " operations failed, attempt " + attempt
+                        + ", retrying in " + delay + " ms: " + e.getMessage());
+            }
+
+            Thread.sleep(delay);
+            delay = Math.min(2 * delay, maxBackoff);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.konica.interview;
+
+/** Represents approximate frequency of keys
+ *
+ * Count-min sketch with four counters per key, each counter is capped at 15.
+ * When number of increments reaches ten times the width of the sketch,
+ * all counters are halved so that old popularity fades out.
+ *
+ * Sketch is not thread safe.
+ */
+public class FrequencySketch {
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = { 0x97cb3127, 0x2f5e9d53, 0x6c8e9cf5, 0xb1d4a2e7 };
+
+    private final int[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param width number of counters, rounded up to power of two
+     */
+    public FrequencySketch(int width) {
+        int size = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+        this.table = new int[size];
+        this.mask = size - 1;
+        this.sampleSize = 10 * size;
+        this.additions = 0;
+    }
+
+    /**
+     * Record one occurrence of key.
+     *
+     * @param key key
+     */
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int seed : SEEDS) {
+            int i = index(hash, seed);
+            if (table[i] < MAX_COUNT) {
+                table[i]++;
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * @param key key
+     * @return estimated number of occurrences of key, at most 15
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int seed : SEEDS) {
+            frequency = Math.min(frequency, table[index(hash, seed)]);
+        }
+        return frequency;
+    }
+
+    /**
+     * Halve all counters.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+        additions >>>= 1;
+    }
+
+    private int index(int hash, int seed) {
+        int h = (hash ^ seed) * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+}
@@ -0,0 +1,101 @@
+package org.konica.interview;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Represents distribution of recorded values
+ *
+ * Values fall into fixed buckets whose upper bounds grow exponentially.
+ * Every bucket is LongAdder, so recording takes no lock and threads which
+ * record at once rarely update the same counter. Cumulative counts are
+ * computed only when histogram is written.
+ *
+ * Values are recorded in integral unit (nanoseconds, bytes) and divided by
+ * scale when written, e.g. latency is recorded in nanoseconds and written
+ * in seconds.
+ */
+public class Histogram {
+    private final long[] bounds;
+    private final String[] les;
+    private final double scale;
+    private final LongAdder[] buckets;
+    private final LongAdder sum;
+
+    /**
+     * @param first upper bound of first bucket in recorded unit
+     * @param factor ratio of upper bounds of following buckets
+     * @param count number of buckets, one more bucket holds values above the last bound
+     * @param scale divisor of recorded values when histogram is written
+     */
+    public Histogram(long first, int factor, int count, double scale) {
+        this.bounds = new long[count];
+        this.les = new String[count];
+        this.scale = scale;
+        this.buckets = new LongAdder[count + 1];
+        this.sum = new LongAdder();
+
+        long bound = first;
+        for (int i = 0; i < count; i++) {
+            bounds[i] = bound;
+            les[i] = BigDecimal.valueOf(bound / scale).stripTrailingZeros().toPlainString();
+            bound *= factor;
+        }
+        for (int i = 0; i <= count; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return histogram of latencies in nanoseconds from 100 microseconds to 52 seconds, written in seconds
+     */
+    public static Histogram latency() {
+        return new Histogram(100000, 2, 20, 1e9);
+    }
+
+    /**
+     * @return histogram of sizes from 256 bytes (or characters) to 1 GB
+     */
+    public static Histogram size() {
+        return new Histogram(256, 4, 12, 1);
+    }
+
+    /**
+     * @param value recorded value, e.g. latency in nanoseconds
+     */
+    public void record(long value) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bounds[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        buckets[low].increment();
+        sum.add(value);
+    }
+
+    /**
+     * Write histogram in Prometheus text format.
+     *
+     * @param out receives histogram
+     * @param name name of histogram
+     * @param labels labels of histogram without braces, can be empty
+     */
+    void write(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "{" : "{" + labels + ",";
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            count += buckets[i].sum();
+            out.append(name).append("_bucket").append(prefix)
+                    .append("le=\"").append(i < les.length ? les[i] : "+Inf").append("\"} ")
+                    .append(count).append('\n');
+        }
+
+        String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+        out.append(name).append("_sum").append(suffix).append(sum.sum() / scale).append('\n');
+        out.append(name).append("_count").append(suffix).append(count).append('\n');
+    }
+}
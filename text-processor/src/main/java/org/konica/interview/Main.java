@@ -11,31 +11,91 @@ import org.apache.commons.cli.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import spark.Route;
+import spark.Spark;
+
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
-import static spark.Spark.delete;
-import static spark.Spark.get;
+import static spark.Spark.exception;
 import static spark.Spark.port;
-import static spark.Spark.post;
-import static spark.Spark.put;
 import static spark.Spark.threadPool;
 
 public class Main {
     private static String textExtractorUrl = "http://localhost:9998/tika";
     private static String documentStoreUrl = "mongodb://localhost:27017";
     private static Integer threadCount;
+    private static Integer maxRequests;
     private static Integer sparkPort;
+    private static Integer tikaConnections;
+    private static Integer tikaConnectTimeout;
+    private static Integer tikaReadTimeout;
+    private static Integer tikaQueue;
+    private static Integer storageThreads;
+    private static Integer storageQueue;
+    private static Integer parserThreads;
+    private static Integer parserQueue;
+    private static Integer resultCacheSize;
+    private static Integer resultCacheMaxBytes;
+    private static Long resultCacheWeight;
+    private static Integer batchWorkers;
+    private static Integer parallelThreshold;
+    private static Integer cacheTtl;
+    private static Integer cacheTick;
+    private static Long cacheMaxBytes;
+    private static boolean migrate;
+    private static boolean compress;
+    private static Integer slowRequestThreshold;
+    private static Integer slowRequestSample;
+    private static Integer offHeapBytes;
 
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
+    private static Admission admission;
+
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final String HTTP_MAX_CONNECTIONS = "http.maxConnections";
+    private static final int DEFAULT_STORAGE_THREADS = 8;
+    private static final int DEFAULT_STORAGE_QUEUE = 32;
+    private static final int DEFAULT_PARSER_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_PARSER_QUEUE = 64;
+    // threads of Jetty above admitted requests, they run its acceptors and selectors and refuse excess requests
+    private static final int REFUSING_THREADS = 16;
+    private static final long REQUEST_DRAIN_TIMEOUT = 30000;
+
     public static void main(String[] args) throws IOException {
         processArgs(args);
 
+        ParallelStatistics.setThreshold(parallelThreshold);
+        RequestTiming.setSlowRequestLog(slowRequestThreshold, slowRequestSample);
+
         port(sparkPort);
-        threadPool(threadCount);
+        admission = new Admission(maxRequests);
+        threadPool(maxRequests + REFUSING_THREADS);
 
-        BasicTextProcessor basicTextProcessor = new BasicTextProcessor(textExtractorUrl);
-        PersistentTextProcessor persistentTextProcessor = new PersistentTextProcessor(textExtractorUrl, documentStoreUrl);
+        // JVM-wide size of JDK keep-alive cache, it has to be set before the first connection is made
+        if (System.getProperty(HTTP_MAX_CONNECTIONS) == null) {
+            System.setProperty(HTTP_MAX_CONNECTIONS, Integer.toString(tikaConnections));
+        }
+        TextExtractor textExtractor = new TextExtractor(textExtractorUrl, tikaConnections, tikaQueue, tikaConnectTimeout, tikaReadTimeout);
+        BoundedExecutor storage = new BoundedExecutor("storage", storageThreads, storageQueue, true);
+        // parsing is bound by CPU, so it runs on platform threads
+        BoundedExecutor parser = new BoundedExecutor("parser", parserThreads, parserQueue, false);
+        ResultCache resultCache = resultCacheSize > 0 ? new ResultCache(resultCacheSize, resultCacheWeight, resultCacheMaxBytes) : null;
+        BasicTextProcessor basicTextProcessor = new BasicTextProcessor(textExtractor, resultCache, batchWorkers, parser);
+        DocumentStore documentStore = new DocumentStore(documentStoreUrl, cacheTtl, cacheTick, cacheMaxBytes, compress, offHeapBytes, storage);
+        PersistentTextProcessor persistentTextProcessor = new PersistentTextProcessor(textExtractor, documentStore, parser);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(documentStore)));
+        if (migrate) {
+            documentStore.migrate();
+        }
+
+        exception(RejectedExecutionException.class, (e, request, response) -> {
+            logger.warn(request.uri() + " refused: " + e.getMessage());
+            response.status(SERVICE_UNAVAILABLE);
+            response.header("Retry-After", "1");
+            response.body("");
+        });
 
         put("/document",                            basicTextProcessor::parseAll);
         put("/document/paragraph/count",            basicTextProcessor::paragraphCount);
@@ -43,6 +103,7 @@ public class Main {
         put("/document/paragraph/length/min",       basicTextProcessor::paragraphLengthMin);
         put("/document/paragraph/length/avg",       basicTextProcessor::paragraphLengthAvg);
         put("/document/word/frequency",             basicTextProcessor::wordFrequency);
+        put("/documents/batch",                     basicTextProcessor::batch);
 
         post("/document",                           persistentTextProcessor::saveDocument);
         get("/document/:id",                        persistentTextProcessor::parseAll);
@@ -51,7 +112,50 @@ public class Main {
         get("/document/:id/paragraph/length/min",   persistentTextProcessor::paragraphLengthMin);
         get("/document/:id/paragraph/length/avg",   persistentTextProcessor::paragraphLengthAvg);
         get("/document/:id/word/frequency",         persistentTextProcessor::wordFrequency);
+        patch("/document/:id",                      persistentTextProcessor::appendDocument);
         delete("/document/:id",                     persistentTextProcessor::deleteDocument);
+
+        get("/cache/result",                        basicTextProcessor::resultCacheStatistics);
+        get("/cache/document",                      persistentTextProcessor::documentCacheStatistics);
+        get("/metrics",                             Metrics::scrape);
+    }
+
+    /**
+     * Refuse new requests and let requests being handled finish, stop server, then write
+     * cached documents to database. Nothing can be appended to document once it is written.
+     *
+     * @param documentStore store whose cached documents are written
+     */
+    private static void shutdown(DocumentStore documentStore) {
+        if (!admission.close(REQUEST_DRAIN_TIMEOUT)) {
+            logger.warn("Requests being handled did not finish in " + REQUEST_DRAIN_TIMEOUT + " ms before shutdown");
+        }
+        // stop of Spark 2.4 returns once Jetty is stopped
+        Spark.stop();
+        documentStore.shutdown();
+    }
+
+    // every route is registered through these, so latency, status and phases of every route are recorded
+    // and request is refused before it is handled when too many requests are handled
+
+    private static void put(String path, Route route) {
+        Spark.put(path, Metrics.timed("PUT", path, admission.admitted(RequestTiming.timed(route))));
+    }
+
+    private static void post(String path, Route route) {
+        Spark.post(path, Metrics.timed("POST", path, admission.admitted(RequestTiming.timed(route))));
+    }
+
+    private static void get(String path, Route route) {
+        Spark.get(path, Metrics.timed("GET", path, admission.admitted(RequestTiming.timed(route))));
+    }
+
+    private static void patch(String path, Route route) {
+        Spark.patch(path, Metrics.timed("PATCH", path, admission.admitted(RequestTiming.timed(route))));
+    }
+
+    private static void delete(String path, Route route) {
+        Spark.delete(path, Metrics.timed("DELETE", path, admission.admitted(RequestTiming.timed(route))));
     }
 
     static void processArgs(String[] args) {
@@ -65,14 +169,104 @@ public class Main {
         output.setRequired(true);
         options.addOption(output);
 
-        Option threads = new Option("w", "workers", true, "Number of threads for Spark");
+        Option threads = new Option("w", "workers", true, "Number of threads for Spark reserved for requests which do not wait for Tika or database. Default: 6");
         threads.setRequired(false);
         options.addOption(threads);
 
+        Option requests = new Option("mr", "max-requests", true, "Maximum number of requests handled at once, the others are refused. "
+                + "Default: workers and capacities of Tika, storage and parser executors");
+        requests.setRequired(false);
+        options.addOption(requests);
+
         Option port = new Option("p", "port", true, "Listening port. Default: 4567");
         port.setRequired(false);
         options.addOption(port);
 
+        Option connections = new Option("tc", "tika-connections", true, "Maximum number of connections to Tika, "
+                + "also number of idle connections kept alive unless -Dhttp.maxConnections is given. Default: " + TextExtractor.DEFAULT_MAX_CONNECTIONS);
+        connections.setRequired(false);
+        options.addOption(connections);
+
+        Option connectTimeout = new Option("tct", "tika-connect-timeout", true, "Connect timeout for Tika in milliseconds. Default: " + TextExtractor.DEFAULT_CONNECT_TIMEOUT);
+        connectTimeout.setRequired(false);
+        options.addOption(connectTimeout);
+
+        Option readTimeout = new Option("trt", "tika-read-timeout", true, "Read timeout for Tika in milliseconds. Default: " + TextExtractor.DEFAULT_READ_TIMEOUT);
+        readTimeout.setRequired(false);
+        options.addOption(readTimeout);
+
+        Option tikaQueueSize = new Option("tq", "tika-queue", true, "Maximum number of documents waiting for connection to Tika, the others are refused. Default: " + TextExtractor.DEFAULT_QUEUE_SIZE);
+        tikaQueueSize.setRequired(false);
+        options.addOption(tikaQueueSize);
+
+        Option storageSize = new Option("st", "storage-threads", true, "Maximum number of concurrent database queries. Default: " + DEFAULT_STORAGE_THREADS);
+        storageSize.setRequired(false);
+        options.addOption(storageSize);
+
+        Option storageQueueSize = new Option("sq", "storage-queue", true, "Maximum number of database queries waiting, the others are refused. Default: " + DEFAULT_STORAGE_QUEUE);
+        storageQueueSize.setRequired(false);
+        options.addOption(storageQueueSize);
+
+        Option parserSize = new Option("pw", "parser-threads", true, "Maximum number of documents parsed at once. Default: number of processors");
+        parserSize.setRequired(false);
+        options.addOption(parserSize);
+
+        Option parserQueueSize = new Option("pq", "parser-queue", true, "Maximum number of documents waiting for parser, the others are refused. Default: " + DEFAULT_PARSER_QUEUE);
+        parserQueueSize.setRequired(false);
+        options.addOption(parserQueueSize);
+
+        Option resultSize = new Option("rc", "result-cache-size", true, "Number of cached statistics of uploaded documents, 0 disables cache. Default: " + ResultCache.DEFAULT_MAX_ENTRIES);
+        resultSize.setRequired(false);
+        options.addOption(resultSize);
+
+        Option resultWeight = new Option("rcw", "result-cache-weight", true, "Maximum approximate size in bytes of cached statistics of uploaded documents. Default: " + ResultCache.DEFAULT_MAX_WEIGHT);
+        resultWeight.setRequired(false);
+        options.addOption(resultWeight);
+
+        Option resultMaxBytes = new Option("rcb", "result-cache-max-bytes", true, "Maximum size in bytes of uploaded document which is cached. Default: " + ResultCache.DEFAULT_MAX_DOCUMENT_BYTES);
+        resultMaxBytes.setRequired(false);
+        options.addOption(resultMaxBytes);
+
+        Option batch = new Option("bw", "batch-workers", true, "Number of threads processing documents of batch uploads. Default: " + BasicTextProcessor.DEFAULT_BATCH_WORKERS);
+        batch.setRequired(false);
+        options.addOption(batch);
+
+        Option parallel = new Option("pt", "parallel-threshold", true, "Length of document in characters from which statistics are computed in parallel, 0 disables it. Default: " + ParallelStatistics.DEFAULT_THRESHOLD);
+        parallel.setRequired(false);
+        options.addOption(parallel);
+
+        Option ttl = new Option("ct", "cache-ttl", true, "Time in milliseconds for which document stays in cache without being accessed. Default: " + DocumentCache.DEFAULT_TTL);
+        ttl.setRequired(false);
+        options.addOption(ttl);
+
+        Option tick = new Option("ck", "cache-tick", true, "Precision of cache expiry in milliseconds. Default: " + DocumentCache.DEFAULT_TICK);
+        tick.setRequired(false);
+        options.addOption(tick);
+
+        Option maxBytes = new Option("cb", "cache-max-bytes", true, "Maximum approximate size of cached documents in bytes. Default: " + DocumentCache.DEFAULT_MAX_BYTES);
+        maxBytes.setRequired(false);
+        options.addOption(maxBytes);
+
+        Option migration = new Option("m", "migrate", false, "Migrate documents stored by older versions to binary UUID key before start");
+        migration.setRequired(false);
+        options.addOption(migration);
+
+        Option offHeap = new Option("oh", "off-heap-cache-bytes", true, "Size in bytes of off-heap cache of documents, 0 disables it. Default: " + OffHeapCache.DEFAULT_MAX_BYTES);
+        offHeap.setRequired(false);
+        options.addOption(offHeap);
+
+        Option compression = new Option("cz", "compress", false, "Compress idle cached documents and content stored in database");
+        compression.setRequired(false);
+        options.addOption(compression);
+
+        Option slowThreshold = new Option("sr", "slow-request-threshold", true, "Time in milliseconds from which request is logged with its phases, 0 disables it. Default: " + RequestTiming.DEFAULT_SLOW_THRESHOLD);
+        slowThreshold.setRequired(false);
+        options.addOption(slowThreshold);
+
+        Option slowSample = new Option("srs", "slow-request-sample", true, "Only every n-th slow request is logged. Default: " + RequestTiming.DEFAULT_SLOW_SAMPLE);
+        slowSample.setRequired(false);
+        options.addOption(slowSample);
+
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd;
@@ -87,6 +281,71 @@ public class Main {
 
             String p = cmd.getOptionValue("port");
             sparkPort = p == null ? new Integer(4567) : new Integer(p);
+
+            String tc = cmd.getOptionValue("tika-connections");
+            tikaConnections = tc == null ? new Integer(TextExtractor.DEFAULT_MAX_CONNECTIONS) : new Integer(tc);
+
+            String tct = cmd.getOptionValue("tika-connect-timeout");
+            tikaConnectTimeout = tct == null ? new Integer(TextExtractor.DEFAULT_CONNECT_TIMEOUT) : new Integer(tct);
+
+            String trt = cmd.getOptionValue("tika-read-timeout");
+            tikaReadTimeout = trt == null ? new Integer(TextExtractor.DEFAULT_READ_TIMEOUT) : new Integer(trt);
+
+            String tq = cmd.getOptionValue("tika-queue");
+            tikaQueue = tq == null ? new Integer(TextExtractor.DEFAULT_QUEUE_SIZE) : new Integer(tq);
+
+            String st = cmd.getOptionValue("storage-threads");
+            storageThreads = st == null ? new Integer(DEFAULT_STORAGE_THREADS) : new Integer(st);
+
+            String sq = cmd.getOptionValue("storage-queue");
+            storageQueue = sq == null ? new Integer(DEFAULT_STORAGE_QUEUE) : new Integer(sq);
+
+            String pw = cmd.getOptionValue("parser-threads");
+            parserThreads = pw == null ? new Integer(DEFAULT_PARSER_THREADS) : new Integer(pw);
+
+            String pq = cmd.getOptionValue("parser-queue");
+            parserQueue = pq == null ? new Integer(DEFAULT_PARSER_QUEUE) : new Integer(pq);
+
+            String rc = cmd.getOptionValue("result-cache-size");
+            resultCacheSize = rc == null ? new Integer(ResultCache.DEFAULT_MAX_ENTRIES) : new Integer(rc);
+
+            String rcw = cmd.getOptionValue("result-cache-weight");
+            resultCacheWeight = rcw == null ? new Long(ResultCache.DEFAULT_MAX_WEIGHT) : new Long(rcw);
+
+            String rcb = cmd.getOptionValue("result-cache-max-bytes");
+            resultCacheMaxBytes = rcb == null ? new Integer(ResultCache.DEFAULT_MAX_DOCUMENT_BYTES) : new Integer(rcb);
+
+            String bw = cmd.getOptionValue("batch-workers");
+            batchWorkers = bw == null ? new Integer(BasicTextProcessor.DEFAULT_BATCH_WORKERS) : new Integer(bw);
+
+            String pt = cmd.getOptionValue("parallel-threshold");
+            parallelThreshold = pt == null ? new Integer(ParallelStatistics.DEFAULT_THRESHOLD) : new Integer(pt);
+
+            String ct = cmd.getOptionValue("cache-ttl");
+            cacheTtl = ct == null ? new Integer(DocumentCache.DEFAULT_TTL) : new Integer(ct);
+
+            String ck = cmd.getOptionValue("cache-tick");
+            cacheTick = ck == null ? new Integer(DocumentCache.DEFAULT_TICK) : new Integer(ck);
+
+            String cb = cmd.getOptionValue("cache-max-bytes");
+            cacheMaxBytes = cb == null ? new Long(DocumentCache.DEFAULT_MAX_BYTES) : new Long(cb);
+
+            String oh = cmd.getOptionValue("off-heap-cache-bytes");
+            offHeapBytes = oh == null ? new Integer(OffHeapCache.DEFAULT_MAX_BYTES) : new Integer(oh);
+
+            String sr = cmd.getOptionValue("slow-request-threshold");
+            slowRequestThreshold = sr == null ? new Integer(RequestTiming.DEFAULT_SLOW_THRESHOLD) : new Integer(sr);
+
+            String srs = cmd.getOptionValue("slow-request-sample");
+            slowRequestSample = srs == null ? new Integer(RequestTiming.DEFAULT_SLOW_SAMPLE) : new Integer(srs);
+
+            // requests waiting for Tika, database or parser never take threads reserved for the other requests
+            String mr = cmd.getOptionValue("max-requests");
+            maxRequests = mr == null ? new Integer(threadCount + tikaConnections + tikaQueue + storageThreads + storageQueue + parserThreads + parserQueue)
+                    : new Integer(mr);
+
+            migrate = cmd.hasOption("migrate");
+            compress = cmd.hasOption("compress");
         } catch (ParseException e) {
             logger.error(e.getMessage());
             formatter.printHelp("text-processor", options);
@@ -0,0 +1,208 @@
+package org.konica.interview;
+
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/** Represents registry of metrics served in Prometheus text format
+ *
+ * Metrics are registered by components which own them, usually once when
+ * they are created, and read only when metrics are scraped. Metric registered
+ * again with the same name and labels replaces the previous one. Histograms
+ * and counters are updated without locks, so metrics can stay enabled in
+ * production.
+ *
+ * Routes wrapped by timed record latency, response status and size of
+ * uploaded body.
+ *
+ * @see Histogram
+ */
+public class Metrics {
+    private static final String COUNTER   = "counter";
+    private static final String GAUGE     = "gauge";
+    private static final String HISTOGRAM = "histogram";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    private static final Map<String, Family> families = new LinkedHashMap<>();
+
+    /** Represents metrics of the same name which differ in labels */
+    private static class Family {
+        private final String help;
+        private final String type;
+        private final Map<String, Object> metrics = new LinkedHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Register histogram.
+     *
+     * @param name name of histogram
+     * @param help description of histogram
+     * @param labels labels of histogram, see labels
+     * @param histogram registered histogram
+     * @return registered histogram
+     */
+    public static Histogram histogram(String name, String help, String labels, Histogram histogram) {
+        register(name, help, HISTOGRAM, labels, histogram);
+        return histogram;
+    }
+
+    /**
+     * Register counter whose value is kept by its owner, e.g. in LongAdder.
+     *
+     * @param name name of counter, should end with _total
+     * @param help description of counter
+     * @param labels labels of counter, see labels
+     * @param value current value of counter
+     */
+    public static void counter(String name, String help, String labels, LongSupplier value) {
+        register(name, help, COUNTER, labels, value);
+    }
+
+    /**
+     * Register counter kept by registry.
+     *
+     * @param name name of counter, should end with _total
+     * @param help description of counter
+     * @param labels labels of counter, see labels
+     * @return counter to be incremented by caller
+     */
+    public static LongAdder counter(String name, String help, String labels) {
+        LongAdder counter = new LongAdder();
+        register(name, help, COUNTER, labels, (LongSupplier) counter::sum);
+        return counter;
+    }
+
+    /**
+     * Register gauge.
+     *
+     * @param name name of gauge
+     * @param help description of gauge
+     * @param labels labels of gauge, see labels
+     * @param value current value of gauge
+     */
+    public static void gauge(String name, String help, String labels, LongSupplier value) {
+        register(name, help, GAUGE, labels, value);
+    }
+
+    /**
+     * Format labels of metric.
+     *
+     * @param namesAndValues names of labels followed by their values
+     * @return labels without braces
+     */
+    public static String labels(String... namesAndValues) {
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+            if (labels.length() > 0) {
+                labels.append(',');
+            }
+            String value = namesAndValues[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+            labels.append(namesAndValues[i]).append("=\"").append(value).append('"');
+        }
+        return labels.toString();
+    }
+
+    private static void register(String name, String help, String type, String labels, Object metric) {
+        synchronized (families) {
+            Family family = families.get(name);
+            if (family == null) {
+                family = new Family(help, type);
+                families.put(name, family);
+            }
+            family.metrics.put(labels, metric);
+        }
+    }
+
+    /**
+     * Wrap route so that its latency, response status and size of uploaded body are recorded.
+     *
+     * @param method HTTP method of route
+     * @param path path of route as it was registered, e.g. /document/:id
+     * @param route wrapped route
+     * @return route which records metrics and delegates to wrapped route
+     */
+    public static Route timed(String method, String path, Route route) {
+        String labels = labels("method", method, "route", path);
+        Histogram latency = histogram("text_processor_request_seconds", "Latency of requests", labels, Histogram.latency());
+        Histogram body = method.equals("PUT") || method.equals("POST") || method.equals("PATCH")
+                ? histogram("text_processor_request_body_bytes", "Size of uploaded request bodies", labels, Histogram.size())
+                : null;
+        LongAdder[] statuses = new LongAdder[6];
+        for (int i = 2; i < statuses.length; i++) {
+            statuses[i] = counter("text_processor_responses_total", "Responses by status class",
+                    labels + "," + labels("status", i + "xx"));
+        }
+
+        return (request, response) -> {
+            long start = System.nanoTime();
+            int status = 500;
+            try {
+                Object result = route.handle(request, response);
+                status = response.raw().getStatus();
+                return result;
+            } catch (RejectedExecutionException e) {
+                status = 503;
+                throw e;
+            } finally {
+                latency.record(System.nanoTime() - start);
+                long length = RequestTiming.received(request);
+                if (body != null && length >= 0) {
+                    body.record(length);
+                }
+                statuses[Math.max(2, Math.min(status / 100, 5))].increment();
+            }
+        };
+    }
+
+    /**
+     * Return all registered metrics in Prometheus text format.
+     *
+     * @param request request of caller
+     * @param response contains message header which will be returned back to caller
+     * @return String which holds response body
+     */
+    public static Object scrape(Request request, Response response) {
+        response.type(CONTENT_TYPE);
+        return write();
+    }
+
+    /**
+     * @return all registered metrics in Prometheus text format
+     */
+    static String write() {
+        StringBuilder out = new StringBuilder(16384);
+        synchronized (families) {
+            for (Map.Entry<String, Family> entry : families.entrySet()) {
+                String name = entry.getKey();
+                Family family = entry.getValue();
+                out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+                out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+                for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                    String labels = metric.getKey();
+                    if (metric.getValue() instanceof Histogram) {
+                        ((Histogram) metric.getValue()).write(out, name, labels);
+                    } else {
+                        out.append(name);
+                        if (!labels.isEmpty()) {
+                            out.append('{').append(labels).append('}');
+                        }
+                        out.append(' ').append(((LongSupplier) metric.getValue()).getAsLong()).append('\n');
+                    }
+                }
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,344 @@
+package org.konica.interview;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/** Represents second level cache of documents outside of heap
+ *
+ * Documents are serialized with compressed content into one direct ByteBuffer
+ * used as ring. New document is written after the last one and when the end
+ * of arena is reached, writing continues from its beginning. Documents which
+ * are overwritten are evicted, so the oldest documents are evicted first.
+ *
+ * Statistics are derived before document is stored and they are kept next to
+ * compressed content, words in descending order of frequency. Statistics can be
+ * read without content, so they are answered without decompressing and parsing
+ * content again. Writes are serialized by lock, reads copy document out of arena optimistically
+ * and retry under lock only if arena was written meanwhile.
+ *
+ * @see CompressedText
+ */
+public class OffHeapCache {
+    public static final int DEFAULT_MAX_BYTES = 0;
+
+    private static final int HEADER = 28;
+
+    private final ByteBuffer arena;
+    private final ConcurrentHashMap<UUID, Slot> index;
+    private final ArrayDeque<Slot> slots;
+    private final StampedLock lock;
+    private int head;
+
+    /**
+     * Copy of document read out of arena
+     */
+    private static class Record {
+        private final int length;
+        private final byte[] content;
+        private final byte[] statistics;
+
+        private Record(int length, byte[] content, byte[] statistics) {
+            this.length = length;
+            this.content = content;
+            this.statistics = statistics;
+        }
+    }
+
+    /**
+     * Place of document in arena
+     */
+    private static class Slot {
+        private final UUID uuid;
+        private final int offset;
+        private final int length;
+
+        private Slot(UUID uuid, int offset, int length) {
+            this.uuid = uuid;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * @param capacity size of arena in bytes
+     */
+    public OffHeapCache(int capacity) {
+        this.arena = ByteBuffer.allocateDirect(capacity);
+        this.index = new ConcurrentHashMap<>();
+        this.slots = new ArrayDeque<>();
+        this.lock = new StampedLock();
+        this.head = 0;
+    }
+
+    /**
+     * Store document. Document without content or larger than arena is not stored.
+     * Statistics of document are derived if they were not derived yet.
+     *
+     * @param uuid identifies Document
+     * @param document Document to be stored
+     */
+    public void put(UUID uuid, Document document) {
+        CompressedText compressed = document.compressed();
+        if (compressed == null || document.hasAppended()) {
+            String text = document.text();
+            if (text == null) {
+                return;
+            }
+            compressed = CompressedText.compress(text);
+        }
+
+        document.parseStatistics();
+        byte[] statistics = encodeStatistics(document);
+
+        byte[] bytes = compressed.bytes();
+        int length = HEADER + bytes.length + statistics.length;
+        if (length > arena.capacity()) {
+            remove(uuid);
+            return;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            if (head + length > arena.capacity()) {
+                // rest of arena is too short, evict documents up to its end and wrap around
+                evict(head, arena.capacity());
+                head = 0;
+            }
+            evict(head, head + length);
+
+            ByteBuffer buffer = arena.duplicate();
+            buffer.position(head);
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+            buffer.putInt(compressed.length());
+            buffer.putInt(bytes.length);
+            buffer.putInt(statistics.length);
+            buffer.put(bytes);
+            buffer.put(statistics);
+
+            Slot slot = new Slot(uuid, head, length);
+            slots.addLast(slot);
+            index.put(uuid, slot);
+            head += length;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Evict documents which occupy part of arena. Has to be called under write lock.
+     *
+     * @param from start of part of arena
+     * @param to end of part of arena
+     */
+    private void evict(int from, int to) {
+        Slot oldest;
+        while ((oldest = slots.peekFirst()) != null && oldest.offset >= from && oldest.offset < to) {
+            slots.removeFirst();
+            index.remove(oldest.uuid, oldest);
+        }
+    }
+
+    /**
+     * @param uuid identifies Document
+     * @return Document with compressed content and its statistics or null if it is not cached
+     */
+    public Document get(UUID uuid) {
+        Record record = read(uuid, true);
+        if (record == null) {
+            return null;
+        }
+
+        Document document = new Document(new CompressedText(record.content, record.length));
+        ByteBuffer statistics = ByteBuffer.wrap(record.statistics);
+        int paragraphCount = statistics.getInt();
+        int paragraphMaxLength = statistics.getInt();
+        int paragraphMinLength = statistics.getInt();
+        statistics.getInt();
+        long paragraphLengthSum = statistics.getLong();
+        long textLength = statistics.getLong();
+        HashMap<String, Long> wordFrequency = decodeWords(statistics, Integer.MAX_VALUE);
+
+        document.setWordFrequency(wordFrequency);
+        document.keepStatistics(DocumentStatistics.restore(paragraphCount, paragraphMaxLength, paragraphMinLength,
+                paragraphLengthSum, textLength, wordFrequency));
+        return document;
+    }
+
+    /**
+     * Read only statistics of document, its content is not copied out of arena.
+     *
+     * @param uuid identifies Document
+     * @param wordLimit maximum number of words of word frequency to be read
+     * @return Document which holds only statistics or null if it is not cached
+     */
+    public Document getStatistics(UUID uuid, int wordLimit) {
+        Record record = read(uuid, false);
+        if (record == null) {
+            return null;
+        }
+
+        Document document = new Document();
+        ByteBuffer statistics = ByteBuffer.wrap(record.statistics);
+        document.setParagraphCount(statistics.getInt());
+        document.setParagraphMaxLength(statistics.getInt());
+        document.setParagraphMinLength(statistics.getInt());
+        document.setParagraphAvgLength(statistics.getInt());
+        statistics.getLong();
+        statistics.getLong();
+        document.setWordFrequency(decodeWords(statistics, wordLimit));
+        return document;
+    }
+
+    /**
+     * Copy document out of arena. Reads are optimistic, copy is taken again under lock
+     * if arena was written meanwhile.
+     *
+     * @param uuid identifies Document
+     * @param content whether compressed content should be copied
+     * @return copy of document or null if it is not cached
+     */
+    private Record read(UUID uuid, boolean content) {
+        Slot slot = index.get(uuid);
+        if (slot == null) {
+            return null;
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        Record record = read(slot, content);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                record = index.get(uuid) == slot ? read(slot, content) : null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Copy document out of arena. Without lock data can be overwritten meanwhile,
+     * such copy is recognized by caller and discarded.
+     *
+     * @param slot place of document
+     * @param content whether compressed content should be copied
+     * @return copy of document or null if slot does not hold expected document
+     */
+    private Record read(Slot slot, boolean content) {
+        ByteBuffer buffer = arena.duplicate();
+        buffer.position(slot.offset);
+        if (buffer.getLong() != slot.uuid.getMostSignificantBits() || buffer.getLong() != slot.uuid.getLeastSignificantBits()) {
+            return null;
+        }
+
+        int length = buffer.getInt();
+        int compressedLength = buffer.getInt();
+        int statisticsLength = buffer.getInt();
+        if (compressedLength < 0 || statisticsLength < 0 || compressedLength + statisticsLength != slot.length - HEADER) {
+            return null;
+        }
+
+        byte[] bytes = null;
+        if (content) {
+            bytes = new byte[compressedLength];
+            buffer.get(bytes);
+        } else {
+            buffer.position(buffer.position() + compressedLength);
+        }
+
+        byte[] statistics = new byte[statisticsLength];
+        buffer.get(statistics);
+        return new Record(length, bytes, statistics);
+    }
+
+    /**
+     * Encode statistics of document, words are kept in order of word frequency.
+     *
+     * @param document Document with derived statistics
+     * @return encoded statistics
+     */
+    private static byte[] encodeStatistics(Document document) {
+        Map<String, Long> wordFrequency = document.getWordFrequency();
+        int wordCount = wordFrequency == null ? 0 : wordFrequency.size();
+        byte[][] words = new byte[wordCount][];
+        int length = 4 * 4 + 2 * 8 + 4 + 12 * wordCount;
+
+        int i = 0;
+        if (wordFrequency != null) {
+            for (String word : wordFrequency.keySet()) {
+                words[i] = word.getBytes(StandardCharsets.UTF_8);
+                length += words[i].length;
+                i++;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(document.getParagraphCount());
+        buffer.putInt(document.getParagraphMaxLength());
+        buffer.putInt(document.getParagraphMinLength());
+        buffer.putInt(document.getParagraphAvgLength());
+        buffer.putLong(document.paragraphLengthSum());
+        buffer.putLong(document.textLength());
+        buffer.putInt(wordCount);
+
+        i = 0;
+        if (wordFrequency != null) {
+            for (Long count : wordFrequency.values()) {
+                buffer.putInt(words[i].length);
+                buffer.put(words[i]);
+                buffer.putLong(count);
+                i++;
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @param statistics encoded statistics positioned at word count
+     * @param wordLimit maximum number of words to be decoded
+     * @return the most frequent words in descending order of frequency
+     */
+    private static HashMap<String, Long> decodeWords(ByteBuffer statistics, int wordLimit) {
+        int wordCount = Math.min(statistics.getInt(), wordLimit);
+        HashMap<String, Long> wordFrequency = new LinkedHashMap<>(wordCount * 4 / 3 + 1);
+        for (int i = 0; i < wordCount; i++) {
+            int length = statistics.getInt();
+            String word = new String(statistics.array(), statistics.position(), length, StandardCharsets.UTF_8);
+            statistics.position(statistics.position() + length);
+            wordFrequency.put(word, statistics.getLong());
+        }
+        return wordFrequency;
+    }
+
+    /**
+     * Remove document. Its space is reclaimed when arena wraps around.
+     *
+     * @param uuid identifies Document
+     * @return true if document was cached
+     */
+    public boolean remove(UUID uuid) {
+        return index.remove(uuid) != null;
+    }
+
+    /**
+     * @return number of cached documents
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return size of arena in bytes
+     */
+    public int capacity() {
+        return arena.capacity();
+    }
+}
@@ -0,0 +1,128 @@
+package org.konica.interview;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Represents statistics of large text computed in parallel
+ *
+ * Text is split in halves between paragraphs until parts are small enough,
+ * statistics of parts are computed on ForkJoinPool and merged in order of
+ * parts, so the result is the same as if text was processed at once.
+ *
+ * Text shorter than threshold is processed on calling thread.
+ *
+ * @see DocumentStatistics
+ */
+public class ParallelStatistics extends RecursiveTask<DocumentStatistics> {
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_THRESHOLD = 8 * 1024 * 1024;
+
+    private static final int MIN_PART = 1024 * 1024;
+
+    private static volatile int threshold = DEFAULT_THRESHOLD;
+
+    private final String text;
+    private final int from;
+    private final int to;
+    private final int part;
+    private final boolean countWords;
+
+    private ParallelStatistics(String text, int from, int to, int part, boolean countWords) {
+        this.text = text;
+        this.from = from;
+        this.to = to;
+        this.part = part;
+        this.countWords = countWords;
+    }
+
+    /**
+     * @param threshold length of text in characters from which it is processed in parallel,
+     *                  0 disables parallel processing
+     */
+    public static void setThreshold(int threshold) {
+        ParallelStatistics.threshold = threshold;
+    }
+
+    /**
+     * Compute finished statistics of text, in parallel if text is long enough.
+     *
+     * @param text document text
+     * @param countWords whether word occurrences should be counted too
+     * @return finished statistics
+     */
+    public static DocumentStatistics compute(String text, boolean countWords) {
+        return compute(text, countWords, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Compute finished statistics of text on given pool, in parallel if text is long enough.
+     *
+     * @param text document text
+     * @param countWords whether word occurrences should be counted too
+     * @param pool pool which computes parts of text
+     * @return finished statistics
+     */
+    static DocumentStatistics compute(String text, boolean countWords, ForkJoinPool pool) {
+        // a few parts per thread keep threads busy when parts take different time
+        int part = Math.max(MIN_PART, text.length() / (4 * pool.getParallelism()));
+        return compute(text, countWords, pool, part);
+    }
+
+    /**
+     * Compute finished statistics of text on given pool, in parallel if text is long enough.
+     *
+     * @param text document text
+     * @param countWords whether word occurrences should be counted too
+     * @param pool pool which computes parts of text
+     * @param part length of text in characters which is not split any more
+     * @return finished statistics
+     */
+    static DocumentStatistics compute(String text, boolean countWords, ForkJoinPool pool, int part) {
+        int threshold = ParallelStatistics.threshold;
+
+        if (threshold <= 0 || text.length() < threshold || pool.getParallelism() < 2) {
+            DocumentStatistics statistics = new DocumentStatistics(countWords);
+            statistics.accept(text);
+            statistics.finish();
+            return statistics;
+        }
+
+        return pool.invoke(new ParallelStatistics(text, 0, text.length(), part, countWords));
+    }
+
+    @Override
+    protected DocumentStatistics compute() {
+        int split = to - from > part ? split() : -1;
+        if (split < 0) {
+            DocumentStatistics statistics = new DocumentStatistics(countWords);
+            statistics.accept(text, from, to);
+            statistics.finish();
+            return statistics;
+        }
+
+        ParallelStatistics right = new ParallelStatistics(text, split, to, part, countWords);
+        right.fork();
+        DocumentStatistics statistics = new ParallelStatistics(text, from, split, part, countWords).compute();
+        statistics.merge(right.join());
+        return statistics;
+    }
+
+    /**
+     * Find split right after the first '\n' following middle of the range, or the last one
+     * preceding it. Both halves are never empty.
+     *
+     * @return index of split or -1 if range can not be split
+     */
+    private int split() {
+        int middle = from + (to - from) / 2;
+        int newline = text.indexOf('\n', middle);
+        if (newline < 0 || newline + 1 >= to) {
+            newline = text.lastIndexOf('\n', Math.min(middle, to - 2));
+            if (newline < from) {
+                return -1;
+            }
+        }
+        return newline + 1;
+    }
+}
@@ -3,6 +3,7 @@ package org.konica.interview;
 import java.io.IOException;
 import java.util.UUID;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
@@ -18,24 +19,27 @@ public class PersistentTextProcessor extends TextProcessor {
     private static DocumentStore documentStore;
 
     /**
-     * @param textExtractorLocation URL of Tika server.
-     * @param documentStoreLocation URL of database server.
+     * @param textExtractor client of Tika server.
+     * @param documentStore storage of documents.
+     * @param parser executor which parses text
      * @throws IOException
      */
-    public PersistentTextProcessor(String textExtractorLocation, String documentStoreLocation) throws IOException {
-        super(textExtractorLocation);
-        documentStore = new DocumentStore(documentStoreLocation);
+    public PersistentTextProcessor(TextExtractor textExtractor, DocumentStore documentStore, BoundedExecutor parser) throws IOException {
+        super(textExtractor, parser);
+        PersistentTextProcessor.documentStore = documentStore;
         logger = LoggerFactory.getLogger(PersistentTextProcessor.class);
     }
 
     /**
      * @param request contains UUID which corresponds to a Document
-     * @return Document object
+     * @param wordLimit maximum number of words of word frequency to be loaded
+     * @param fields statistics to be loaded
+     * @return Document object which holds requested statistics
      * @throws IOException
      */
-    private Document loadDocument(Request request) throws IOException {
+    private Document loadStatistics(Request request, int wordLimit, String... fields) throws IOException {
         UUID uuid = UUID.fromString(request.params(":id"));
-        return documentStore.get(uuid);
+        return documentStore.getStatistics(uuid, wordLimit, fields);
     }
 
     /**
@@ -47,14 +51,16 @@ public class PersistentTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object parseAll(Request request, Response response) throws IOException {
-        Document document = loadDocument(request);
+        Document document = loadStatistics(request, Integer.MAX_VALUE,
+                DocumentStore.PARAGRAPH_COUNT, DocumentStore.PARAGRAPH_MAX_LENGTH, DocumentStore.PARAGRAPH_MIN_LENGTH,
+                DocumentStore.PARAGRAPH_AVG_LENGTH, DocumentStore.WORD_FREQUENCY);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(NOT_FOUND);
             return "";
         }
 
-        return super.parseAll(document);
+        return super.parseAll(document, response);
     }
 
     /**
@@ -66,14 +72,14 @@ public class PersistentTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object paragraphCount(Request request, Response response) throws IOException {
-        Document document = loadDocument(request);
+        Document document = loadStatistics(request, Integer.MAX_VALUE, DocumentStore.PARAGRAPH_COUNT);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(NOT_FOUND);
             return "";
         }
 
-        return super.paragraphCount(document);
+        return super.paragraphCount(document, response);
     }
 
     /**
@@ -85,14 +91,14 @@ public class PersistentTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object paragraphLengthMax(Request request, Response response) throws IOException {
-        Document document = loadDocument(request);
+        Document document = loadStatistics(request, Integer.MAX_VALUE, DocumentStore.PARAGRAPH_MAX_LENGTH);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(NOT_FOUND);
             return "";
         }
 
-        return super.paragraphLengthMax(document);
+        return super.paragraphLengthMax(document, response);
     }
 
     /**
@@ -104,14 +110,14 @@ public class PersistentTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object paragraphLengthMin(Request request, Response response) throws IOException {
-        Document document = loadDocument(request);
+        Document document = loadStatistics(request, Integer.MAX_VALUE, DocumentStore.PARAGRAPH_MIN_LENGTH);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(NOT_FOUND);
             return "";
         }
 
-        return super.paragraphLengthMin(document);
+        return super.paragraphLengthMin(document, response);
     }
 
     /**
@@ -123,18 +129,19 @@ public class PersistentTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object paragraphLengthAvg(Request request, Response response) throws IOException {
-        Document document = loadDocument(request);
+        Document document = loadStatistics(request, Integer.MAX_VALUE, DocumentStore.PARAGRAPH_AVG_LENGTH);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(NOT_FOUND);
             return "";
         }
 
-        return super.paragraphLengthAvg(document);
+        return super.paragraphLengthAvg(document, response);
     }
 
     /**
      * Load Document either from cache or from database, parse and return word frequency in descending order.
+     * Query parameters top and minCount can limit returned words.
      *
      * @param request contains UUID of document
      * @param response contains message header which will be returned back to caller
@@ -142,14 +149,24 @@ public class PersistentTextProcessor extends TextProcessor {
      * @throws IOException
      */
     public Object wordFrequency(Request request, Response response) throws IOException {
-        Document document = loadDocument(request);
+        long top, minCount;
+        try {
+            top = queryParam(request, TOP, Integer.MAX_VALUE);
+            minCount = queryParam(request, MIN_COUNT, 1);
+        } catch (NumberFormatException e) {
+            logger.error(request.uri() + " failed: " + e.getMessage());
+            response.status(BAD_REQUEST);
+            return "";
+        }
+
+        Document document = loadStatistics(request, (int) Math.min(top, Integer.MAX_VALUE), DocumentStore.WORD_FREQUENCY);
         if (document == null) {
             logger.error(request.uri() + " failed");
             response.status(NOT_FOUND);
             return "";
         }
 
-        return super.wordFrequency(document);
+        return super.wordFrequency(document, top, minCount, response);
     }
 
     /**
@@ -169,7 +186,61 @@ public class PersistentTextProcessor extends TextProcessor {
         }
 
         String val = documentStore.store(document).toString();
-        return toJson(DOCUMENT_UUID, val);
+        return toJson(response, DOCUMENT_UUID, val);
+    }
+
+    /**
+     * Append uploaded document to stored Document and return statistics of whole Document.
+     * Only statistics of appended text are computed, they are merged to statistics of
+     * stored Document.
+     *
+     * @param request contains UUID of Document and document to be appended
+     * @param response contains message header which will be returned back to caller
+     * @return String which holds response body
+     * @throws IOException
+     */
+    public Object appendDocument(Request request, Response response) throws IOException {
+        UUID uuid = UUID.fromString(request.params(":id"));
+        Document appended = createDocument(request);
+        Document document = appended == null ? null : documentStore.append(uuid, appended.text());
+        if (document == null) {
+            logger.error(request.uri() + " failed");
+            response.status(NOT_FOUND);
+            return "";
+        }
+
+        return super.parseAll(document, response);
+    }
+
+    /**
+     * Return approximate size of cached documents, compression ratio of compressed documents
+     * and share of lookups answered by each tier of document store.
+     *
+     * @param request request of caller
+     * @param response contains message header which will be returned back to caller
+     * @return String which holds response body
+     */
+    public Object documentCacheStatistics(Request request, Response response) {
+        long raw = CompressedText.getRawBytesTotal();
+        long compressed = CompressedText.getCompressedBytesTotal();
+
+        ObjectNode node = mapper.createObjectNode();
+        node.put(CACHE_SIZE, documentStore.cachedBytes());
+        node.put(CACHE_RAW_BYTES_TOTAL, raw);
+        node.put(CACHE_COMPRESSED_BYTES_TOTAL, compressed);
+        node.put(CACHE_COMPRESSION_RATIO, compressed == 0 ? 0.0 : (double) raw / compressed);
+        node.put(CACHE_OFF_HEAP_SIZE, documentStore.offHeapSize());
+
+        long heap = documentStore.getHeapHits();
+        long offHeap = documentStore.getOffHeapHits();
+        long database = documentStore.getDatabaseHits();
+        long lookups = heap + offHeap + database + documentStore.getMisses();
+        node.put(CACHE_HITS, heap + offHeap + database);
+        node.put(CACHE_MISSES, documentStore.getMisses());
+        node.put(CACHE_HEAP_HIT_RATE, lookups == 0 ? 0.0 : (double) heap / lookups);
+        node.put(CACHE_OFF_HEAP_HIT_RATE, lookups == 0 ? 0.0 : (double) offHeap / lookups);
+        node.put(CACHE_DATABASE_HIT_RATE, lookups == 0 ? 0.0 : (double) database / lookups);
+        return node.toString();
     }
 
     /**
@@ -180,7 +251,7 @@ public class PersistentTextProcessor extends TextProcessor {
      * @return empty body
      * @throws IOException
      */
-    public Object deleteDocument(Request request, Response response) {
+    public Object deleteDocument(Request request, Response response) throws IOException {
         UUID uuid = UUID.fromString(request.params(":id"));
         int s = documentStore.delete(uuid) ? OPERATION_ACCEPTED : NOT_FOUND;
 
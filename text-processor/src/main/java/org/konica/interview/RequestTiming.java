@@ -0,0 +1,250 @@
+package org.konica.interview;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Represents time spent by request in its phases
+ *
+ * Route wrapped by timed collects durations of phases of request handled by
+ * its thread, e.g. receiving body, extraction by Tika, computing statistics,
+ * database query and serialization. Phases are measured where work is done
+ * by calling start and end, which cost nothing when thread handles no timed
+ * request. Phase entered repeatedly is summed.
+ *
+ * Durations are returned in Server-Timing response header. Response body
+ * larger than buffer of Jetty is committed while it is written and headers
+ * can not be added after that, so phases measured so far are attached before
+ * body is written; header holds all phases only if response was not committed
+ * by the end of request. Phases which could not be attached are logged at
+ * debug level, or at info level when response carries no header. Request which
+ * takes longer than slow threshold is logged together with its phases, size
+ * and Content-Type of uploaded document; only every sample-th slow request is
+ * logged, so burst of slow requests does not flood the log. Size is number of
+ * bytes of body which were actually read, so it is known for chunked uploads
+ * too. Timing is kept also as attribute of request, so body can be counted
+ * when it is read by another thread, e.g. by parser.
+ *
+ * Phases which overlap are reported as one phase: documents are streamed to
+ * Tika, so receiving body, extraction and statistics run at once and are
+ * reported as "tika". Plain text is received in chunks which are parsed in
+ * turn, so it is reported as "receive" and "statistics". Paragraphs and words
+ * are counted in the same pass and are reported together as "statistics".
+ */
+public class RequestTiming {
+    private static final Logger logger = LoggerFactory.getLogger(RequestTiming.class);
+
+    public static final String RECEIVE    = "receive";
+    public static final String TIKA       = "tika";
+    public static final String STATISTICS = "statistics";
+    public static final String DATABASE   = "database";
+    public static final String SERIALIZE  = "serialize";
+    public static final String TOTAL      = "total";
+
+    public static final int DEFAULT_SLOW_THRESHOLD = 1000;
+    public static final int DEFAULT_SLOW_SAMPLE = 1;
+
+    private static final String SERVER_TIMING = "Server-Timing";
+    private static final String ATTRIBUTE = RequestTiming.class.getName();
+    private static final int MAX_PHASES = 8;
+
+    private static final ThreadLocal<RequestTiming> current = new ThreadLocal<>();
+    private static final AtomicLong slowRequests = new AtomicLong();
+    private static volatile long slowThreshold = DEFAULT_SLOW_THRESHOLD * 1000000L;
+    private static volatile int slowSample = DEFAULT_SLOW_SAMPLE;
+
+    private final String[] phases = new String[MAX_PHASES];
+    private final long[] durations = new long[MAX_PHASES];
+    private final AtomicLong received = new AtomicLong();
+    private int count;
+    private boolean attached;
+
+    /**
+     * @param threshold time in milliseconds from which request is logged as slow, 0 disables log
+     * @param sample only every sample-th slow request is logged
+     */
+    public static void setSlowRequestLog(int threshold, int sample) {
+        slowThreshold = threshold > 0 ? threshold * 1000000L : Long.MAX_VALUE;
+        slowSample = Math.max(1, sample);
+    }
+
+    /**
+     * @return start of phase to be passed to end, 0 when current thread handles no timed request
+     */
+    public static long start() {
+        return current.get() == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Add time since start to phase of request handled by current thread.
+     *
+     * @param phase name of phase
+     * @param start value returned by start
+     */
+    public static void end(String phase, long start) {
+        RequestTiming timing = current.get();
+        if (timing != null && start != 0) {
+            timing.add(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Count bytes of request body read from stream.
+     *
+     * @param request timed request
+     * @param input stream of request body
+     * @return stream which counts bytes read from it, input itself if request is not timed
+     */
+    public static InputStream counted(Request request, InputStream input) {
+        RequestTiming timing = of(request);
+        if (timing == null) {
+            return input;
+        }
+
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    timing.received.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    timing.received.addAndGet(n);
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                timing.received.addAndGet(skipped);
+                return skipped;
+            }
+        };
+    }
+
+    /**
+     * Count bytes of request body which were read whole, e.g. by Spark.
+     *
+     * @param request timed request
+     * @param bytes number of bytes read
+     */
+    public static void received(Request request, long bytes) {
+        RequestTiming timing = of(request);
+        if (timing != null) {
+            timing.received.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * @param request timed request
+     * @return number of bytes of request body read so far, -1 if request is not timed
+     */
+    public static long received(Request request) {
+        RequestTiming timing = of(request);
+        return timing == null ? -1 : timing.received.get();
+    }
+
+    private static RequestTiming of(Request request) {
+        Object timing = request.raw().getAttribute(ATTRIBUTE);
+        return timing instanceof RequestTiming ? (RequestTiming) timing : null;
+    }
+
+    private void add(String phase, long duration) {
+        for (int i = 0; i < count; i++) {
+            if (phases[i].equals(phase)) {
+                durations[i] += duration;
+                return;
+            }
+        }
+        if (count < MAX_PHASES) {
+            phases[count] = phase;
+            durations[count++] = duration;
+        }
+    }
+
+    /**
+     * Attach phases measured so far to Server-Timing header of response handled by current
+     * thread. Has to be called before response body is written.
+     *
+     * @param response response of timed request
+     */
+    public static void attach(Response response) {
+        RequestTiming timing = current.get();
+        if (timing != null && !response.raw().isCommitted()) {
+            response.raw().setHeader(SERVER_TIMING, timing.toString());
+            timing.attached = true;
+        }
+    }
+
+    /**
+     * Wrap route so that its phases are returned in Server-Timing header and slow requests are logged.
+     *
+     * @param route wrapped route
+     * @return route which collects phases and delegates to wrapped route
+     */
+    public static Route timed(Route route) {
+        return (request, response) -> {
+            RequestTiming timing = new RequestTiming();
+            current.set(timing);
+            request.raw().setAttribute(ATTRIBUTE, timing);
+            long start = System.nanoTime();
+            try {
+                return route.handle(request, response);
+            } finally {
+                current.remove();
+                long total = System.nanoTime() - start;
+                timing.add(TOTAL, total);
+
+                String header = timing.toString();
+                if (!response.raw().isCommitted()) {
+                    response.raw().setHeader(SERVER_TIMING, header);
+                } else if (timing.attached) {
+                    logger.debug("Response of " + request.requestMethod() + " " + request.uri()
+                            + " was committed with partial Server-Timing, phases: " + header);
+                } else {
+                    logger.info("Response of " + request.requestMethod() + " " + request.uri()
+                            + " was committed without Server-Timing, phases: " + header);
+                }
+
+                if (total >= slowThreshold && slowRequests.getAndIncrement() % slowSample == 0) {
+                    logger.warn("Slow request " + request.requestMethod() + " " + request.uri()
+                            + " took " + total / 1000000 + " ms, Content-Type: " + request.contentType()
+                            + ", received: " + timing.received.get() + " bytes"
+                            + ", phases: " + header);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return phases in format of Server-Timing header, durations in milliseconds
+     */
+    @Override
+    public String toString() {
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                header.append(", ");
+            }
+            header.append(phases[i]).append(";dur=")
+                    .append(String.format(Locale.ROOT, "%.3f", durations[i] / 1e6));
+        }
+        return header.toString();
+    }
+}
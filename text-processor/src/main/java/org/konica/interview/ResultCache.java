@@ -0,0 +1,240 @@
+package org.konica.interview;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Represents cache of computed statistics
+ *
+ * Statistics are addressed by SHA-256 digest of uploaded bytes and content type,
+ * so the same document uploaded again is answered without text extraction.
+ * Cache holds at most maxEntries statistics whose approximate size in heap is
+ * at most maxWeight bytes, least recently used ones are evicted. Statistics
+ * hold whole vocabulary of document, so their size is estimated the same way
+ * as size of documents in DocumentCache.
+ * Only uploads not longer than maxDocumentBytes are cached, because upload is
+ * spooled while its digest is computed and it is parsed only when its digest
+ * is not found.
+ *
+ * @see DocumentStatistics
+ */
+public class ResultCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final int DEFAULT_MAX_DOCUMENT_BYTES = 16 * 1024 * 1024;
+    public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+
+    private final LinkedHashMap<String, Entry> cache;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final int maxDocumentBytes;
+    private long weight;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * @param maxEntries maximum number of cached statistics
+     * @param maxWeight maximum approximate size of cached statistics in bytes
+     * @param maxDocumentBytes maximum size of upload which can be cached
+     */
+    public ResultCache(int maxEntries, long maxWeight, int maxDocumentBytes) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.maxDocumentBytes = maxDocumentBytes;
+        this.weight = 0;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+
+        Metrics.counter("text_processor_result_cache_hits_total", "Uploads answered by cached statistics", "", hits::sum);
+        Metrics.counter("text_processor_result_cache_misses_total", "Cacheable uploads whose statistics were computed", "", misses::sum);
+        Metrics.counter("text_processor_result_cache_evictions_total", "Statistics evicted from result cache", "", evictions::sum);
+        Metrics.gauge("text_processor_result_cache_entries", "Number of cached statistics", "", this::size);
+        Metrics.gauge("text_processor_result_cache_bytes", "Approximate size of cached statistics in bytes", "", this::weight);
+    }
+
+    /**
+     * @param length length of upload in bytes, negative if unknown
+     * @return true if upload of this length can be cached
+     */
+    public boolean isCacheable(long length) {
+        return length >= 0 && length <= maxDocumentBytes;
+    }
+
+    /**
+     * @return maximum size of upload which can be cached
+     */
+    public int getMaxDocumentBytes() {
+        return maxDocumentBytes;
+    }
+
+    /**
+     * Compute key of upload.
+     *
+     * @param bytes uploaded document
+     * @param type content type of uploaded document
+     * @return hex encoded digest of content type and document
+     */
+    public static String key(byte[] bytes, String type) {
+        MessageDigest digest = digest(type);
+        digest.update(bytes);
+        return key(digest);
+    }
+
+    /**
+     * Compute key of upload which is read from stream. Stream is read to its end
+     * but it is not closed.
+     *
+     * @param input uploaded document
+     * @param type content type of uploaded document
+     * @return hex encoded digest of content type and document
+     * @throws IOException
+     */
+    public static String key(InputStream input, String type) throws IOException {
+        MessageDigest digest = digest(type);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return key(digest);
+    }
+
+    /**
+     * Create digest which already holds content type of upload, bytes of upload are
+     * added to it as they are read, e.g. by DigestInputStream.
+     *
+     * @param type content type of uploaded document
+     * @return digest of content type
+     */
+    public static MessageDigest digest(String type) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        digest.update((type == null ? "" : type).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        return digest;
+    }
+
+    /**
+     * @param digest digest of content type and whole upload
+     * @return hex encoded digest
+     */
+    public static String key(MessageDigest digest) {
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param key key of upload
+     * @return cached statistics or null
+     */
+    public DocumentStatistics get(String key) {
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+
+        DocumentStatistics statistics = entry == null ? null : entry.statistics;
+
+        if (statistics == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return statistics;
+    }
+
+    /**
+     * Cache statistics and evict least recently used ones until cache fits its bounds.
+     * Statistics larger than the whole cache are not cached.
+     *
+     * @param key key of upload
+     * @param statistics finished statistics of upload
+     */
+    public void put(String key, DocumentStatistics statistics) {
+        long size = statistics.estimateSize();
+        if (size > maxWeight) {
+            return;
+        }
+
+        synchronized (cache) {
+            Entry previous = cache.put(key, new Entry(statistics, size));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += size;
+
+            Iterator<Entry> eldest = cache.values().iterator();
+            while (cache.size() > maxEntries || weight > maxWeight) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * @return number of cached statistics
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return approximate size of cached statistics in bytes
+     */
+    public long weight() {
+        synchronized (cache) {
+            return weight;
+        }
+    }
+
+    /**
+     * @return number of lookups which found statistics
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups which did not find statistics
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of evicted statistics
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** Represents cached statistics with their size */
+    private static class Entry {
+        final DocumentStatistics statistics;
+        final long weight;
+
+        Entry(DocumentStatistics statistics, long weight) {
+            this.statistics = statistics;
+            this.weight = weight;
+        }
+    }
+}
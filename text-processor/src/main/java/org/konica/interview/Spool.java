@@ -0,0 +1,112 @@
+package org.konica.interview;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** Represents upload kept while it is received, so it can be read again
+ *
+ * At most memoryThreshold bytes are held in heap, longer upload is written
+ * to temporary file as it is read. Upload is never held in heap as a whole,
+ * whatever its length is. Temporary file is deleted when spool is closed.
+ */
+public class Spool implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int memoryThreshold;
+    private byte[] memory;
+    private Path file;
+    private OutputStream fileOutput;
+    private long length;
+
+    /**
+     * @param memoryThreshold maximum number of bytes held in heap
+     */
+    public Spool(int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+        this.memory = new byte[Math.min(memoryThreshold, BUFFER_SIZE)];
+    }
+
+    /**
+     * Read stream until its end or until more than limit bytes are read. Stream is not closed,
+     * so the rest of stream can still be read after spooled bytes when limit was exceeded.
+     *
+     * @param input stream of upload
+     * @param limit maximum length of upload which is read to its end
+     * @return true if whole stream was read, false if it is longer than limit
+     * @throws IOException
+     */
+    public boolean readFrom(InputStream input, long limit) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            write(buffer, n);
+            if (length > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(byte[] buffer, int n) throws IOException {
+        if (file == null && length + n > memoryThreshold) {
+            file = Files.createTempFile("text-processor-", ".spool");
+            fileOutput = Files.newOutputStream(file);
+            fileOutput.write(memory, 0, (int) length);
+            memory = null;
+        }
+
+        if (file != null) {
+            fileOutput.write(buffer, 0, n);
+        } else {
+            if (length + n > memory.length) {
+                memory = Arrays.copyOf(memory, (int) Math.min(memoryThreshold, Math.max(2 * memory.length, length + n)));
+            }
+            System.arraycopy(buffer, 0, memory, (int) length, n);
+        }
+        length += n;
+    }
+
+    /**
+     * @return number of spooled bytes
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Open spooled bytes, they can be opened more than once.
+     *
+     * @return stream of spooled bytes
+     * @throws IOException
+     */
+    public InputStream open() throws IOException {
+        if (file == null) {
+            return new ByteArrayInputStream(memory, 0, (int) length);
+        }
+
+        fileOutput.flush();
+        return Files.newInputStream(file);
+    }
+
+    /**
+     * Delete temporary file.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            try {
+                fileOutput.close();
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.konica.interview;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/** Represents reader of tar archive
+ *
+ * Regular files are read from stream one after another, other entries are
+ * skipped. Long names of GNU and PAX archives are supported.
+ */
+public class TarReader {
+    private static final int BLOCK = 512;
+
+    private final DataInputStream input;
+    private final byte[] header;
+    private long remaining;
+
+    /** Represents file in archive */
+    public static class Entry {
+        private final String name;
+        private final long size;
+
+        private Entry(String name, long size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        /**
+         * @return path of file in archive
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return size of file in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * @param input stream of archive
+     */
+    public TarReader(InputStream input) {
+        this.input = new DataInputStream(input);
+        this.header = new byte[BLOCK];
+        this.remaining = 0;
+    }
+
+    /**
+     * Move to the next regular file. Content of previous file which was not read is skipped.
+     *
+     * @return next file or null at the end of archive
+     * @throws IOException
+     */
+    public Entry next() throws IOException {
+        skip(remaining);
+        remaining = 0;
+
+        String longName = null;
+        while (true) {
+            if (!readHeader()) {
+                return null;
+            }
+
+            String name = string(header, 0, 100);
+            String prefix = "ustar".equals(string(header, 257, 5)) ? string(header, 345, 155) : "";
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+            long size = octal(header, 124, 12);
+            char type = (char) header[156];
+
+            if (type == 'L') {
+                longName = string(readAll(size), 0, (int) size);
+            } else if (type == 'x') {
+                String path = paxPath(readAll(size));
+                if (path != null) {
+                    longName = path;
+                }
+            } else if (type == '0' || type == '\0') {
+                remaining = size;
+                return new Entry(longName != null ? longName : name, size);
+            } else {
+                skip(size);
+                longName = null;
+            }
+        }
+    }
+
+    /**
+     * Read whole content of current file.
+     *
+     * @return content of file
+     * @throws IOException
+     */
+    public byte[] read() throws IOException {
+        byte[] bytes = readAll(remaining);
+        remaining = 0;
+        return bytes;
+    }
+
+    /**
+     * @return false at the end of archive
+     * @throws IOException
+     */
+    private boolean readHeader() throws IOException {
+        int off = 0;
+        while (off < BLOCK) {
+            int n = input.read(header, off, BLOCK - off);
+            if (n == -1) {
+                if (off == 0) {
+                    return false;
+                }
+                throw new IOException("Truncated tar header");
+            }
+            off += n;
+        }
+
+        for (byte b : header) {
+            if (b != 0) {
+                return true;
+            }
+        }
+        // the first of zero blocks which end archive
+        return false;
+    }
+
+    /**
+     * Read content of entry together with padding to the whole block.
+     *
+     * @param size size of entry in bytes
+     * @return content of entry
+     * @throws IOException
+     */
+    private byte[] readAll(long size) throws IOException {
+        if (size > Integer.MAX_VALUE - BLOCK) {
+            throw new IOException("Tar entry is too large");
+        }
+
+        byte[] bytes = new byte[(int) size];
+        input.readFully(bytes);
+        skipPadding(size);
+        return bytes;
+    }
+
+    private void skip(long size) throws IOException {
+        long left = size;
+        while (left > 0) {
+            long n = input.skip(left);
+            if (n <= 0) {
+                if (input.read() == -1) {
+                    throw new IOException("Truncated tar entry");
+                }
+                n = 1;
+            }
+            left -= n;
+        }
+        skipPadding(size);
+    }
+
+    private void skipPadding(long size) throws IOException {
+        int padding = (int) ((BLOCK - size % BLOCK) % BLOCK);
+        input.readFully(new byte[padding]);
+    }
+
+    /**
+     * @param records PAX extended header
+     * @return value of path record or null
+     */
+    private static String paxPath(byte[] records) {
+        int off = 0;
+        while (off < records.length) {
+            int space = off;
+            while (space < records.length && records[space] != ' ') {
+                space++;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(records, off, space - off, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (length <= 0 || off + length > records.length) {
+                return null;
+            }
+
+            String record = new String(records, space + 1, off + length - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith("path=")) {
+                return record.substring(5);
+            }
+            off += length;
+        }
+        return null;
+    }
+
+    private static String string(byte[] bytes, int off, int length) {
+        int end = off;
+        while (end < off + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, off, end - off, StandardCharsets.UTF_8);
+    }
+
+    private static long octal(byte[] bytes, int off, int length) throws IOException {
+        if ((bytes[off] & 0x80) != 0) {
+            throw new IOException("Tar entry is too large");
+        }
+
+        long value = 0;
+        for (int i = off; i < off + length; i++) {
+            byte b = bytes[i];
+            if (b == 0 || b == ' ') {
+                if (value > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("Invalid tar header");
+            }
+            value = value * 8 + (b - '0');
+        }
+        return value;
+    }
+}
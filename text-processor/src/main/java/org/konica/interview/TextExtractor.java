@@ -1,61 +1,296 @@
 package org.konica.interview;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
 /** Used for communication with Tika
  *
  * This sends documents to Tika service and receives content of documents
  * in plain text.
+ *
+ * Requests are executed by own bounded executor, so at most maxConnections
+ * requests are sent to Tika at once and at most queueSize requests wait,
+ * the others are rejected. Virtual threads are used when runtime supports
+ * them. Responses are always read to the end
+ * and connections are never disconnected explicitly, so JDK keeps them
+ * alive and reuses them for following requests. JDK keeps at most
+ * http.maxConnections idle connections per host, the property is JVM-wide
+ * and it is set at startup by Main.
+ *
+ * Response of Tika can be either collected to String or streamed directly
+ * to DocumentStatistics without keeping the text. Extraction is asynchronous,
+ * synchronous methods wait for it on calling thread, which is what request
+ * threads of Spark do.
+ *
+ * Round-trip time of requests to Tika, failures and transferred bytes and
+ * characters are recorded in Metrics.
+ *
+ * @see TikaTextReader
  */
 public class TextExtractor {
+    private static final int BUFFER_SIZE = 8192;
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 6;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_READ_TIMEOUT    = 60000;
+    public static final int DEFAULT_QUEUE_SIZE      = 16;
+
+    private static final Histogram roundTrip = Metrics.histogram("text_processor_tika_request_seconds",
+            "Round-trip time of requests to Tika", "", Histogram.latency());
+    private static final LongAdder failures = Metrics.counter("text_processor_tika_failures_total",
+            "Requests to Tika which failed", "");
+    private static final LongAdder sentBytes = Metrics.counter("text_processor_tika_sent_bytes_total",
+            "Bytes of documents sent to Tika", "");
+    private static final LongAdder receivedChars = Metrics.counter("text_processor_tika_received_characters_total",
+            "Characters of text received from Tika", "");
+
     private  URL url;
+    private int connectTimeout;
+    private int readTimeout;
+    private BoundedExecutor executor;
 
     /**
      * @param url URL of Tika
      * @throws IOException
      */
     public TextExtractor(String url) throws IOException {
+        this(url, DEFAULT_MAX_CONNECTIONS, DEFAULT_QUEUE_SIZE, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * @param url URL of Tika
+     * @param maxConnections maximum number of concurrent connections to Tika
+     * @param queueSize maximum number of documents waiting for connection
+     * @param connectTimeout connect timeout in milliseconds
+     * @param readTimeout read timeout in milliseconds
+     * @throws IOException
+     */
+    public TextExtractor(String url, int maxConnections, int queueSize, int connectTimeout, int readTimeout) throws IOException {
         this.url = new URL(url);
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+
+        this.executor = new BoundedExecutor("text-extractor", maxConnections, queueSize, true);
     }
 
     /**
-     * Send bytes (of document) to Tika for text extraction.
+     * Pipe document to Tika for text extraction while it is being read. Document is
+     * sent in chunks, so it is never held in memory as a whole.
      *
-     * @param bytes byte representation od document
+     * @param input stream of document
      * @return text which was extracted from document
      * @throws IOException
      */
-    public String bytesToText(byte [] bytes) throws IOException {
-        HttpURLConnection connection;
+    public String streamToText(InputStream input) throws IOException {
+        return await(streamToTextAsync(input));
+    }
 
-        connection = (HttpURLConnection) this.url.openConnection();
+    /**
+     * Pipe document to Tika and feed extracted text to statistics while it is being received.
+     * Neither document nor extracted text is held in memory as a whole.
+     *
+     * @param input stream of document
+     * @param statistics receives extracted text
+     * @return statistics which received extracted text
+     * @throws IOException
+     */
+    public DocumentStatistics streamToStatistics(InputStream input, DocumentStatistics statistics) throws IOException {
+        return await(streamToStatisticsAsync(input, statistics));
+    }
+
+    /**
+     * Pipe document to Tika for text extraction without waiting for response.
+     *
+     * @param input stream of document
+     * @return future text which was extracted from document
+     */
+    public CompletableFuture<String> streamToTextAsync(InputStream input) {
+        return submit(() -> {
+            return readText(upload(input));
+        });
+    }
+
+    /**
+     * Pipe document to Tika and feed extracted text to statistics without waiting for response.
+     *
+     * @param input stream of document
+     * @param statistics receives extracted text
+     * @return future statistics which received extracted text
+     */
+    public CompletableFuture<DocumentStatistics> streamToStatisticsAsync(InputStream input, DocumentStatistics statistics) {
+        return submit(() -> {
+            HttpURLConnection connection = upload(input);
+
+            try (Reader reader = openText(connection)) {
+                char[] buffer = new char[BUFFER_SIZE];
+                int n;
+                while ((n = reader.read(buffer)) != -1) {
+                    statistics.accept(buffer, 0, n);
+                    receivedChars.add(n);
+                }
+            }
+            return statistics;
+        });
+    }
+
+    /**
+     * Stop accepting new documents and wait for running extractions.
+     *
+     * @param timeout maximum time to wait in milliseconds
+     * @throws InterruptedException
+     */
+    public void shutdown(long timeout) throws InterruptedException {
+        executor.shutdown(timeout);
+    }
+
+    /**
+     * Run extraction on pool of extractor.
+     *
+     * @param extraction extraction to run
+     * @return future result of extraction
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> extraction) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    future.complete(extraction.call());
+                } catch (Throwable t) {
+                    failures.increment();
+                    future.completeExceptionally(t);
+                } finally {
+                    roundTrip.record(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Wait for extraction and rethrow its failure.
+     *
+     * @param future future result of extraction
+     * @return result of extraction
+     * @throws IOException
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return connection to Tika prepared for upload of document
+     * @throws IOException
+     */
+    private HttpURLConnection openConnection() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) this.url.openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
         connection.setDoOutput(true);
         connection.setRequestMethod("PUT");
         connection.setRequestProperty("Accept", "text/plain");
+        return connection;
+    }
 
-        DataOutputStream wr = new DataOutputStream (connection.getOutputStream());
-        wr.write(bytes);
-        wr.flush();
-        wr.close();
-
-        BufferedReader br = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-        String line;
-        StringBuilder builder = new StringBuilder();
+    /**
+     * Send document to Tika in chunks.
+     *
+     * @param input stream of document
+     * @return connection to which document was uploaded
+     * @throws IOException
+     */
+    private HttpURLConnection upload(InputStream input) throws IOException {
+        HttpURLConnection connection = openConnection();
+        connection.setChunkedStreamingMode(BUFFER_SIZE);
 
-        while ((line = br.readLine()) != null) {
-            if (line.equals("")) {
-                builder.append("\n");
-                continue;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (OutputStream wr = connection.getOutputStream()) {
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                wr.write(buffer, 0, n);
+                sentBytes.add(n);
             }
+        }
+        return connection;
+    }
 
-            builder.append(line);
+    /**
+     * Open text extracted by Tika. Reader has to be read to the end and closed
+     * so that connection can be reused.
+     *
+     * @param connection connection to which document was uploaded
+     * @return reader of text in which empty lines are kept as paragraph separators
+     * @throws IOException
+     */
+    private Reader openText(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        if (status >= 400) {
+            drain(connection.getErrorStream());
+            throw new IOException("Tika responded with status " + status);
         }
 
+        return new TikaTextReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read whole text extracted by Tika.
+     *
+     * @param connection connection to which document was uploaded
+     * @return text which was extracted from document
+     * @throws IOException
+     */
+    private String readText(HttpURLConnection connection) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        try (Reader reader = openText(connection)) {
+            char[] buffer = new char[BUFFER_SIZE];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, n);
+                receivedChars.add(n);
+            }
+        }
         return builder.toString();
     }
+
+    /**
+     * Read stream to the end and close it.
+     *
+     * @param input stream to be drained, can be null
+     * @throws IOException
+     */
+    private static void drain(InputStream input) throws IOException {
+        if (input == null) {
+            return;
+        }
+
+        try (InputStream in = input) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (in.read(buffer) != -1) {
+                // discard
+            }
+        }
+    }
 }
@@ -4,14 +4,34 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import com.fasterxml.jackson.databind.ser.FilterProvider;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import spark.Request;
+import spark.Response;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
 
 /** Represents text processor
  *
@@ -19,14 +39,28 @@ import spark.Request;
  * It uses text extractor object to extract content from document which is uploaded to service
  * via REST API. BasicTextProcessor and PersistentTextProcessor enhance functionality of this class.
  *
+ * Responses are written to output stream of response by streaming JsonGenerator, so large word
+ * frequency is never built as one String. Generator neither flushes nor closes output stream, so
+ * response which fits into buffer of servlet is not committed and headers can still be set after
+ * it was written. ObjectWriter of Document is built once, it is immutable and shared by all threads.
+ *
+ * Text is parsed on bounded parser executor, so at most as many documents as there are parser
+ * threads are parsed at once and requests which do not fit into its queue are refused. Request
+ * thread waits for parser, Spark routes are synchronous. Uploaded plain text is read from network
+ * by request thread and only decoding and counting of each received chunk runs on parser, so slow
+ * upload never holds parser thread. Statistics which were already computed are read on request
+ * thread.
+ *
  * @see BasicTextProcessor
  * @see PersistentTextProcessor
  */
 public abstract class TextProcessor {
     protected TextExtractor textExtractor;
+    protected BoundedExecutor parser;
     protected ObjectMapper mapper;
 
     protected static final int OPERATION_ACCEPTED   = 202;
+    protected static final int BAD_REQUEST          = 400;
     protected static final int NOT_FOUND            = 404;
     protected static final int INTERNAL_ERROR       = 500;
 
@@ -34,6 +68,8 @@ public abstract class TextProcessor {
     protected static final String TEXT_PLAIN = "text/plain";
     protected static final String TEXT_WORD  = "text/word";
 
+    protected static final String APPLICATION_JSON = "application/json";
+
     protected static final String PARAGRAPH_COUNT   = "ParagraphCount";
     protected static final String PARAGRAPH_LEN_MAX = "ParagraphLengthMax";
     protected static final String PARAGRAPH_LEN_MIN = "ParagraphLengthMin";
@@ -41,19 +77,51 @@ public abstract class TextProcessor {
     protected static final String WORD_FREQUENCY    = "WordFrequency";
     protected static final String DOCUMENT_UUID     = "Uuid";
 
+    protected static final String CACHE_HITS      = "Hits";
+    protected static final String CACHE_MISSES    = "Misses";
+    protected static final String CACHE_EVICTIONS = "Evictions";
+    protected static final String CACHE_SIZE      = "Size";
+    protected static final String CACHE_BYTES     = "Bytes";
+
+    protected static final String CACHE_RAW_BYTES_TOTAL        = "RawBytesTotal";
+    protected static final String CACHE_COMPRESSED_BYTES_TOTAL = "CompressedBytesTotal";
+    protected static final String CACHE_COMPRESSION_RATIO      = "CompressionRatio";
+    protected static final String CACHE_OFF_HEAP_SIZE          = "OffHeapSize";
+    protected static final String CACHE_HEAP_HIT_RATE          = "HeapHitRate";
+    protected static final String CACHE_OFF_HEAP_HIT_RATE      = "OffHeapHitRate";
+    protected static final String CACHE_DATABASE_HIT_RATE      = "DatabaseHitRate";
+
+    protected static final String BATCH_INDEX      = "Index";
+    protected static final String BATCH_NAME       = "Name";
+    protected static final String BATCH_STATISTICS = "Statistics";
+    protected static final String BATCH_ERROR      = "Error";
+
+    protected static final int BUFFER_SIZE = 8192;
+    protected static final int RECEIVE_CHUNK_SIZE = 256 * 1024;
+
+    private static final Histogram documentLengths = Metrics.histogram("text_processor_document_characters",
+            "Length of text of uploaded documents in characters", "", Histogram.size());
+
+    protected static final String TOP       = "top";
+    protected static final String MIN_COUNT = "minCount";
+
     protected SimpleBeanPropertyFilter propertyFilter;
     protected FilterProvider excp;
+    protected ObjectWriter documentWriter;
+    protected JsonFactory jsonFactory;
 
     protected Logger logger;
 
     /**
      * Constructor for TextProcessor.
      *
-     * @param textExtractorLocation URL of Tika server.
+     * @param textExtractor client of Tika server.
+     * @param parser executor which parses text
      * @throws IOException
      */
-    public TextProcessor(String textExtractorLocation) throws IOException {
-        textExtractor = new TextExtractor(textExtractorLocation);
+    public TextProcessor(TextExtractor textExtractor, BoundedExecutor parser) throws IOException {
+        this.textExtractor = textExtractor;
+        this.parser = parser;
         mapper = new ObjectMapper();
 
         // workaround to ensure Document class is loaded so that JSON fileter
@@ -62,21 +130,119 @@ public abstract class TextProcessor {
 
         propertyFilter = SimpleBeanPropertyFilter.serializeAllExcept("content", "paragraphs");
         excp = new SimpleFilterProvider().addFilter("Document", propertyFilter);
+        documentWriter = mapper.writer(excp);
+
+        jsonFactory = new JsonFactory();
+        jsonFactory.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        jsonFactory.configure(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM, false);
 
         logger = LoggerFactory.getLogger(TextProcessor.class);
     }
 
     /**
-     * Used for creating JSON formated response.
+     * Write JSON response with one field.
      *
+     * @param response receives response body
      * @param name Name of the JSON node
      * @param value Value of the JSON node
-     * @return string containing object in JSON
+     * @return empty body, JSON is written directly to response
+     * @throws IOException
+     */
+    public Object toJson(Response response, String name, String value) throws IOException {
+        long start = RequestTiming.start();
+        try (JsonGenerator generator = jsonResponse(response)) {
+            generator.writeStartObject();
+            generator.writeStringField(name, value);
+            generator.writeEndObject();
+        } finally {
+            RequestTiming.end(RequestTiming.SERIALIZE, start);
+        }
+        return "";
+    }
+
+    /**
+     * Create generator of JSON response body. Closing generator flushes its buffer
+     * to response, response itself is neither flushed nor closed. Phases of request
+     * are attached to response before anything is written to it.
+     *
+     * @param response receives response body
+     * @return generator which writes to output stream of response
+     * @throws IOException
+     */
+    protected JsonGenerator jsonResponse(Response response) throws IOException {
+        response.type(APPLICATION_JSON);
+        RequestTiming.attach(response);
+        return json(response.raw().getOutputStream());
+    }
+
+    /**
+     * @param output receives JSON
+     * @return generator which writes to output, output is neither flushed nor closed by it
+     * @throws IOException
+     */
+    protected JsonGenerator json(OutputStream output) throws IOException {
+        return jsonFactory.createJsonGenerator(output, JsonEncoding.UTF8);
+    }
+
+    /**
+     * Run parsing task on parser executor and wait for its result. Time spent by request
+     * in parsing, including waiting for executor, is added to its timing.
+     *
+     * @param task parsing task
+     * @return result of task
+     * @throws IOException
+     * @throws java.util.concurrent.RejectedExecutionException if parser is overloaded
+     */
+    protected <T> T parse(Callable<T> task) throws IOException {
+        long start = RequestTiming.start();
+        try {
+            return parser.call(task);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            RequestTiming.end(RequestTiming.STATISTICS, start);
+        }
+    }
+
+    /**
+     * Compute statistics of Document on parser executor, unless they were already computed.
+     *
+     * @param document holds text and parsed statistics
+     * @return Document whose statistics can be read without processing its text
+     * @throws IOException
      */
-    public String toJson(String name, String value) {
-        ObjectNode objectNode1 = mapper.createObjectNode();
-        objectNode1.put(name, value);
-        return objectNode1.toString();
+    protected Document parsed(Document document) throws IOException {
+        if (!document.statisticsReady()) {
+            parse(() -> {
+                document.parseStatistics();
+                return document;
+            });
+        }
+        return document;
+    }
+
+    /**
+     * Read non negative numeric query parameter.
+     *
+     * @param request contains query parameters
+     * @param name name of query parameter
+     * @param defaultValue value used when parameter is not present
+     * @return value of query parameter
+     * @throws NumberFormatException if value is not a non negative number
+     */
+    protected static long queryParam(Request request, String name, long defaultValue) {
+        String value = request.queryParams(name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        long l = Long.parseLong(value);
+        if (l < 0) {
+            throw new NumberFormatException(name + " can not be negative");
+        }
+        return l;
     }
 
     /**
@@ -92,21 +258,303 @@ public abstract class TextProcessor {
         Document document;
 
         if (type.equals(TEXT_PDF) || type.equals(TEXT_WORD)) {
-            String content = textExtractor.bytesToText(request.bodyAsBytes());
+            String content = extract(requestBody(request));
             document = new Document(content);
         } else if (type.equals(TEXT_PLAIN)){
-            String content = request.body();
-            document = new Document(content);
+            document = receiveText(request);
         } else {
             logger.warn("Unrecognized type '{}' of document. Trying extraction by Tika.", type);
 
-            String content = textExtractor.bytesToText(request.bodyAsBytes());
+            String content = extract(requestBody(request));
             document = new Document(content);
         }
 
+        String text = document.text();
+        if (text != null) {
+            documentLengths.record(text.length());
+        }
+        return document;
+    }
+
+    /**
+     * Receive plain text and compute its statistics in the same pass, so statistics of
+     * stored text are not computed again from it. Text is received in chunks like in
+     * receiveStatistics and each chunk is decoded on parser executor.
+     *
+     * @param request contains uploaded text
+     * @return Document which holds text and its statistics
+     * @throws IOException
+     * @throws java.util.concurrent.RejectedExecutionException if parser is overloaded
+     */
+    private Document receiveText(Request request) throws IOException {
+        long length = request.raw().getContentLengthLong();
+        DocumentStatistics statistics = new DocumentStatistics(true);
+        // UTF-8 text has at most as many characters as bytes
+        StringBuilder text = new StringBuilder((int) Math.max(16, Math.min(length, RECEIVE_CHUNK_SIZE * 64L)));
+        receive(requestBody(request), new TextDecoder(statistics, text), statistics);
+
+        Document document = new Document(text.toString());
+        document.keepStatistics(statistics);
         return document;
     }
 
+    /**
+     * @param body stream of uploaded document
+     * @return text extracted by Tika while document is piped to it
+     * @throws IOException
+     */
+    private String extract(InputStream body) throws IOException {
+        long start = RequestTiming.start();
+        try {
+            return textExtractor.streamToText(body);
+        } finally {
+            RequestTiming.end(RequestTiming.TIKA, start);
+        }
+    }
+
+    /**
+     * Compute statistics of uploaded document while it is being received. Plain text is
+     * decoded chunk by chunk, other types are piped to Tika and its response is fed to
+     * statistics as it arrives. Content of document is not kept in returned Document,
+     * only its statistics.
+     *
+     * @param request contains data representing document which is subject to extraction
+     * @param countWords whether word occurrences should be counted too
+     * @return Document which holds statistics of uploaded document
+     * @throws IOException
+     * @see DocumentStatistics
+     */
+    protected Document streamDocument(Request request, boolean countWords) throws IOException {
+        String type = request.headers("Content-Type");
+        return new Document(receiveStatistics(requestBody(request), type, countWords));
+    }
+
+    /**
+     * Compute statistics of document while it is being received by request thread. Plain
+     * text is read in chunks by this thread and each chunk is decoded and counted on parser
+     * executor, other types are piped to Tika by text extractor.
+     *
+     * @param body stream of document
+     * @param type type of document. Can be one of TEXT_PDF, TEXT_PLAIN, TEXT_WORD
+     * @param countWords whether word occurrences should be counted too
+     * @return finished statistics of document
+     * @throws IOException
+     * @throws java.util.concurrent.RejectedExecutionException if parser is overloaded
+     */
+    protected DocumentStatistics receiveStatistics(InputStream body, String type, boolean countWords) throws IOException {
+        if (!TEXT_PLAIN.equals(type)) {
+            return computeStatistics(body, type, countWords);
+        }
+
+        DocumentStatistics statistics = new DocumentStatistics(countWords);
+        receive(body, new TextDecoder(statistics, null), statistics);
+        documentLengths.record(statistics.getLength());
+        return statistics;
+    }
+
+    /**
+     * Read plain text in chunks by current thread and decode each chunk on parser executor.
+     *
+     * @param body stream of text
+     * @param decoder receives chunks of text
+     * @param statistics receives decoded text, they are finished with the last chunk
+     * @throws IOException
+     */
+    private void receive(InputStream body, TextDecoder decoder, DocumentStatistics statistics) throws IOException {
+        byte[] chunk = new byte[RECEIVE_CHUNK_SIZE];
+        int length;
+        do {
+            long start = RequestTiming.start();
+            length = readChunk(body, chunk);
+            RequestTiming.end(RequestTiming.RECEIVE, start);
+
+            int n = length;
+            parse(() -> {
+                decoder.decode(chunk, n);
+                if (n < chunk.length) {
+                    decoder.finish();
+                    statistics.finish();
+                }
+                return null;
+            });
+        } while (length == chunk.length);
+    }
+
+    /**
+     * Read stream until chunk is full or stream ends.
+     *
+     * @param input stream of document
+     * @param chunk receives bytes of document
+     * @return number of bytes read, less than length of chunk only at end of stream
+     * @throws IOException
+     */
+    private static int readChunk(InputStream input, byte[] chunk) throws IOException {
+        int length = 0;
+        while (length < chunk.length) {
+            int n = input.read(chunk, length, chunk.length - length);
+            if (n == -1) {
+                break;
+            }
+            length += n;
+        }
+        return length;
+    }
+
+    /**
+     * Compute statistics of document while it is being read by current thread.
+     *
+     * @param body stream of document
+     * @param type type of document. Can be one of TEXT_PDF, TEXT_PLAIN, TEXT_WORD
+     * @param countWords whether word occurrences should be counted too
+     * @return finished statistics of document
+     * @throws IOException
+     */
+    protected DocumentStatistics computeStatistics(InputStream body, String type, boolean countWords) throws IOException {
+        DocumentStatistics statistics = new DocumentStatistics(countWords);
+
+        long start = RequestTiming.start();
+        if (TEXT_PLAIN.equals(type)) {
+            decode(body, new TextDecoder(statistics, null));
+            statistics.finish();
+            RequestTiming.end(RequestTiming.STATISTICS, start);
+        } else {
+            if (!TEXT_PDF.equals(type) && !TEXT_WORD.equals(type)) {
+                logger.warn("Unrecognized type '{}' of document. Trying extraction by Tika.", type);
+            }
+            textExtractor.streamToStatistics(body, statistics);
+            statistics.finish();
+            RequestTiming.end(RequestTiming.TIKA, start);
+        }
+
+        documentLengths.record(statistics.getLength());
+        return statistics;
+    }
+
+    /**
+     * Pipe document to Tika and compute statistics of extracted text without waiting for it.
+     *
+     * @param body stream of document, it is not closed
+     * @param type type of document. Can be one of TEXT_PDF, TEXT_WORD
+     * @return future finished statistics of document
+     */
+    protected CompletableFuture<DocumentStatistics> extractStatistics(InputStream body, String type) {
+        if (!TEXT_PDF.equals(type) && !TEXT_WORD.equals(type)) {
+            logger.warn("Unrecognized type '{}' of document. Trying extraction by Tika.", type);
+        }
+
+        return textExtractor.streamToStatisticsAsync(body, new DocumentStatistics(true)).thenApply(statistics -> {
+            statistics.finish();
+            documentLengths.record(statistics.getLength());
+            return statistics;
+        });
+    }
+
+    /**
+     * Spark caches whole body of request on first access to its input stream.
+     * Unwrap servlet request to read body directly from connection. Bytes read
+     * from body are counted in timing of request.
+     *
+     * @param request incoming request
+     * @return stream of request body
+     * @throws IOException
+     */
+    protected static InputStream requestBody(Request request) throws IOException {
+        ServletRequest raw = request.raw();
+        while (raw instanceof ServletRequestWrapper) {
+            raw = ((ServletRequestWrapper) raw).getRequest();
+        }
+        return RequestTiming.counted(request, raw.getInputStream());
+    }
+
+    /**
+     * Decode UTF-8 text from stream and feed it to statistics using fixed size buffers.
+     *
+     * @param input stream of text
+     * @param decoder receives bytes of text
+     * @throws IOException
+     */
+    private static void decode(InputStream input, TextDecoder decoder) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            decoder.decode(buffer, n);
+        }
+        decoder.finish();
+    }
+
+    /** Represents UTF-8 decoder which feeds decoded text to statistics
+     *
+     * Text can be decoded in chunks by different threads one after another, bytes of
+     * character split between chunks are kept until the next chunk. Fixed size buffers
+     * are used whatever the size of chunk is. Decoded text is also collected when it
+     * is kept in Document.
+     */
+    private static class TextDecoder {
+        private final CharsetDecoder decoder;
+        private final ByteBuffer bytes;
+        private final CharBuffer chars;
+        private final DocumentStatistics statistics;
+        private final StringBuilder text;
+
+        /**
+         * @param statistics receives decoded text
+         * @param text collects decoded text, null if text is not kept
+         */
+        TextDecoder(DocumentStatistics statistics, StringBuilder text) {
+            this.decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.bytes = ByteBuffer.allocate(BUFFER_SIZE);
+            this.chars = CharBuffer.allocate(BUFFER_SIZE);
+            this.statistics = statistics;
+            this.text = text;
+        }
+
+        /**
+         * @param chunk bytes of text which follow the previous chunk
+         * @param length number of bytes in chunk
+         */
+        void decode(byte[] chunk, int length) {
+            int offset = 0;
+            while (offset < length) {
+                int n = Math.min(length - offset, bytes.remaining());
+                bytes.put(chunk, offset, n);
+                offset += n;
+                decodeBytes(false);
+            }
+        }
+
+        /**
+         * Decode bytes left at the end of text.
+         */
+        void finish() {
+            decodeBytes(true);
+            while (decoder.flush(chars).isOverflow()) {
+                drain();
+            }
+            drain();
+        }
+
+        private void decodeBytes(boolean eof) {
+            bytes.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, eof);
+                drain();
+            } while (result.isOverflow());
+            bytes.compact();
+        }
+
+        private void drain() {
+            chars.flip();
+            statistics.accept(chars.array(), chars.position(), chars.remaining());
+            if (text != null) {
+                text.append(chars.array(), chars.position(), chars.remaining());
+            }
+            chars.clear();
+        }
+    }
+
     /**
      * Wrapper method for extractByContent method
      *
@@ -127,68 +575,164 @@ public abstract class TextProcessor {
      * @return JSON object with statistics
      * @throws IOException
      */
-    public Object parseAll(Document document) throws IOException {
-        document.parseParagraphCount();
-        document.parseParagraphMaxLength();
-        document.parseParagraphMinLength();
-        document.parseParagraphAvgLength();
-        document.parseWordFrequency();
+    public String parseAll(Document document) throws IOException {
+        parsed(document).parseStatistics();
 
-        return mapper.writer(excp).writeValueAsString(document);
+        long start = RequestTiming.start();
+        String json = documentWriter.writeValueAsString(document);
+        RequestTiming.end(RequestTiming.SERIALIZE, start);
+        return json;
+    }
+
+    /**
+     * Parse all statistics from document at once and write them to response.
+     *
+     * @param document holds text and parsed statistics
+     * @param response receives JSON object with statistics
+     * @return empty body, JSON is written directly to response
+     * @throws IOException
+     */
+    public Object parseAll(Document document, Response response) throws IOException {
+        parsed(document).parseStatistics();
+
+        long start = RequestTiming.start();
+        try (JsonGenerator generator = jsonResponse(response)) {
+            documentWriter.writeValue(generator, document);
+        } finally {
+            RequestTiming.end(RequestTiming.SERIALIZE, start);
+        }
+        return "";
+    }
+
+    /**
+     * Write all statistics of document which were already parsed.
+     *
+     * @param document holds parsed statistics
+     * @param output receives JSON object with statistics
+     * @throws IOException
+     */
+    public void writeAll(Document document, OutputStream output) throws IOException {
+        try (JsonGenerator generator = json(output)) {
+            documentWriter.writeValue(generator, document);
+        }
     }
 
     /**
      * Returns the paragraph count of document
      *
      * @param document holds text and parsed statistics
-     * @return JSON object with statistics
+     * @param response receives JSON object with statistics
+     * @return empty body, JSON is written directly to response
+     * @throws IOException
      */
-    public Object paragraphCount(Document document){
-        String val = document.parseParagraphCount().toString();
-        return toJson(PARAGRAPH_COUNT, val);
+    public Object paragraphCount(Document document, Response response) throws IOException {
+        String val = parsed(document).parseParagraphCount().toString();
+        return toJson(response, PARAGRAPH_COUNT, val);
     }
 
     /**
      * Returns character count of longest paragraph in document.
      *
      * @param document holds text and parsed statistics
-     * @return JSON object with statistics
+     * @param response receives JSON object with statistics
+     * @return empty body, JSON is written directly to response
+     * @throws IOException
      */
-    public Object paragraphLengthMax(Document document) {
-        String val =  document.parseParagraphMaxLength().toString();
-        return toJson(PARAGRAPH_LEN_MAX, val);
+    public Object paragraphLengthMax(Document document, Response response) throws IOException {
+        String val = parsed(document).parseParagraphMaxLength().toString();
+        return toJson(response, PARAGRAPH_LEN_MAX, val);
     }
 
     /**
      * Returns character count of shortest paragraph in document.
      *
      * @param document holds text and parsed statistics
-     * @return JSON object with statistics
+     * @param response receives JSON object with statistics
+     * @return empty body, JSON is written directly to response
+     * @throws IOException
      */
-    public Object paragraphLengthMin(Document document) {
-        String val = document.parseParagraphMinLength().toString();
-        return toJson(PARAGRAPH_LEN_MIN, val);
+    public Object paragraphLengthMin(Document document, Response response) throws IOException {
+        String val = parsed(document).parseParagraphMinLength().toString();
+        return toJson(response, PARAGRAPH_LEN_MIN, val);
     }
 
     /**
      * Returns average length of paragraph in document.
      *
      * @param document holds text and parsed statistics
-     * @return JSON object with statistics
+     * @param response receives JSON object with statistics
+     * @return empty body, JSON is written directly to response
+     * @throws IOException
      */
-    public Object paragraphLengthAvg(Document document) {
-        String val = document.parseParagraphAvgLength().toString();
-        return toJson(PARAGRAPH_LEN_AVG, val);
+    public Object paragraphLengthAvg(Document document, Response response) throws IOException {
+        String val = parsed(document).parseParagraphAvgLength().toString();
+        return toJson(response, PARAGRAPH_LEN_AVG, val);
     }
 
     /**
-     * Returns word frequency in descending order.
+     * Returns word frequency in descending order, or only the most frequent words.
+     * Words are written as JSON object in order of their rank.
      *
      * @param document holds text and parsed statistics
-     * @return JSON object with statistics
+     * @param top maximum number of words to be returned
+     * @param minCount minimum occurrences of word to be returned
+     * @param response receives JSON object with statistics
+     * @return empty body, JSON is written directly to response
+     * @throws IOException
+     */
+    public Object wordFrequency(Document document, long top, long minCount, Response response) throws IOException {
+        HashMap<String, Long> words = selectWords(document, top, minCount);
+
+        long start = RequestTiming.start();
+        try (JsonGenerator generator = jsonResponse(response)) {
+            writeWordFrequency(generator, words);
+        } finally {
+            RequestTiming.end(RequestTiming.SERIALIZE, start);
+        }
+        return "";
+    }
+
+    /**
+     * Write word frequency of document, or only the most frequent words.
+     *
+     * @param document holds text and parsed statistics
+     * @param top maximum number of words to be returned
+     * @param minCount minimum occurrences of word to be returned
+     * @param output receives JSON object with statistics
+     * @throws IOException
      */
-    public Object wordFrequency(Document document) {
-        String val = document.parseWordFrequency().toString();
-        return toJson(WORD_FREQUENCY, val);
+    public void writeWordFrequency(Document document, long top, long minCount, OutputStream output) throws IOException {
+        try (JsonGenerator generator = json(output)) {
+            writeWordFrequency(generator, selectWords(document, top, minCount));
+        }
+    }
+
+    private HashMap<String, Long> selectWords(Document document, long top, long minCount) throws IOException {
+        parsed(document);
+        if (top >= Integer.MAX_VALUE && minCount <= 1) {
+            return document.parseWordFrequency();
+        }
+        return document.parseWordFrequency((int) Math.min(top, Integer.MAX_VALUE), minCount);
+    }
+
+    /**
+     * Write words in order of iteration, which is order of their rank.
+     *
+     * @param generator receives JSON object with word frequency
+     * @param words word frequency in descending order
+     * @throws IOException
+     */
+    private static void writeWordFrequency(JsonGenerator generator, HashMap<String, Long> words) throws IOException {
+        generator.writeStartObject();
+        if (words == null) {
+            generator.writeNullField(WORD_FREQUENCY);
+        } else {
+            generator.writeObjectFieldStart(WORD_FREQUENCY);
+            for (Map.Entry<String, Long> e : words.entrySet()) {
+                generator.writeNumberField(e.getKey(), e.getValue());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
     }
-}
\ No newline at end of file
+}
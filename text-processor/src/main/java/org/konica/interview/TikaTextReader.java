@@ -0,0 +1,80 @@
+package org.konica.interview;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/** Represents reader of text extracted by Tika
+ *
+ * Tika ends every line of plain text output with a line break and separates
+ * paragraphs with empty lines. This reader joins lines of one paragraph and
+ * replaces every empty line with single '\n', so paragraphs can be detected
+ * while response is still being received.
+ *
+ * @see TextExtractor
+ */
+public class TikaTextReader extends Reader {
+    private final Reader in;
+    private boolean lineEmpty;
+    private boolean pendingCarriageReturn;
+
+    /**
+     * @param in plain text output of Tika
+     */
+    public TikaTextReader(Reader in) {
+        this.in = in;
+        this.lineEmpty = true;
+        this.pendingCarriageReturn = false;
+    }
+
+    /**
+     * Read transformed text. Transformed text is never longer than original one,
+     * so original text is read directly into buffer and transformed in place.
+     */
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        while (true) {
+            int n = in.read(buffer, offset, length);
+            if (n == -1) {
+                return -1;
+            }
+
+            int out = offset;
+            for (int i = offset; i < offset + n; i++) {
+                char c = buffer[i];
+
+                // \r\n is one line break
+                if (pendingCarriageReturn) {
+                    pendingCarriageReturn = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+
+                if (c == '\n' || c == '\r') {
+                    if (lineEmpty) {
+                        buffer[out++] = '\n';
+                    }
+                    lineEmpty = true;
+                    pendingCarriageReturn = c == '\r';
+                    continue;
+                }
+
+                buffer[out++] = c;
+                lineEmpty = false;
+            }
+
+            if (out > offset) {
+                return out - offset;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,131 @@
+package org.konica.interview;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Represents hashed timing wheel
+ *
+ * Values are scheduled to expire at some time and are handed over to expiry
+ * callback after that time, with precision of one tick. On every tick only
+ * the bucket of the current tick is processed.
+ *
+ * Wheel has enough buckets to cover maxDelay, so every value found in
+ * processed bucket is due and no value is touched before it is due. Longer
+ * delays are shortened to maxDelay.
+ *
+ * Values can be scheduled from any thread. Buckets and callback are used
+ * only by the thread of the scheduler.
+ *
+ * @param <T> type of scheduled values
+ */
+public class TimingWheel<T> {
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private final long tickMillis;
+    private final long maxDelay;
+    private final long start;
+    private final int mask;
+    private final List<ArrayDeque<T>> buckets;
+    private final ConcurrentLinkedQueue<Timeout<T>> pending;
+    private final Consumer<T> callback;
+    private final ScheduledExecutorService scheduler;
+
+    private long tick;
+
+    /**
+     * Value scheduled from other thread which is not in bucket yet
+     */
+    private static class Timeout<T> {
+        private final T value;
+        private final long deadline;
+
+        private Timeout(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Create timing wheel and start its scheduler.
+     *
+     * @param name name of thread of scheduler
+     * @param tickMillis duration of one tick in milliseconds
+     * @param maxDelay longest delay in milliseconds
+     * @param callback receives expired values
+     */
+    public TimingWheel(String name, long tickMillis, long maxDelay, Consumer<T> callback) {
+        this.tickMillis = tickMillis;
+        this.maxDelay = maxDelay;
+        this.start = System.currentTimeMillis();
+        this.callback = callback;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.tick = 0;
+
+        int size = Integer.highestOneBit((int) Math.min(maxDelay / tickMillis + 2, 1 << 30) - 1) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayDeque<>());
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedule value to expire after given time.
+     *
+     * @param value value to be scheduled
+     * @param deadline time in milliseconds since epoch when value expires
+     */
+    public void schedule(T value, long deadline) {
+        pending.add(new Timeout<>(value, deadline));
+    }
+
+    /**
+     * Stop scheduler. Values which did not expire yet are never handed over to callback.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Process all ticks which elapsed since the last run.
+     */
+    private void advance() {
+        long now = System.currentTimeMillis();
+        long last = (now - start) / tickMillis;
+
+        Timeout<T> timeout;
+        while ((timeout = pending.poll()) != null) {
+            long deadline = Math.min(timeout.deadline, now + maxDelay);
+            long deadlineTick = Math.max(tick, (deadline - start + tickMillis - 1) / tickMillis);
+            buckets.get((int) (deadlineTick & mask)).add(timeout.value);
+        }
+
+        for (; tick <= last; tick++) {
+            ArrayDeque<T> bucket = buckets.get((int) (tick & mask));
+            T value;
+            while ((value = bucket.poll()) != null) {
+                try {
+                    callback.accept(value);
+                } catch (Exception e) {
+                    logger.error("Expiry callback failed", e);
+                }
+            }
+        }
+    }
+}
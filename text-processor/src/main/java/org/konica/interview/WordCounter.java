@@ -0,0 +1,266 @@
+package org.konica.interview;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/** Represents counter of word occurrences
+ *
+ * Open addressing hash table with primitive counters. Words are looked up by
+ * range of characters, so String is created only once for every distinct word.
+ * Words are kept in order of their first occurrence.
+ */
+public class WordCounter {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] table;
+    private String[] words;
+    private int[] hashes;
+    private long[] counts;
+    private int size;
+
+    /**
+     * Initialize counter
+     */
+    public WordCounter() {
+        this.table = new int[INITIAL_CAPACITY * 2];
+        this.words = new String[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.counts = new long[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Count one occurrence of word.
+     *
+     * @param buffer holds characters of word
+     * @param offset index of first character of word
+     * @param length number of characters of word
+     */
+    public void add(char[] buffer, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (entry < 0) {
+                insert(slot, new String(buffer, offset, length), hash, 1);
+                return;
+            }
+            if (hashes[entry] == hash && matches(words[entry], buffer, offset, length)) {
+                counts[entry]++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Add occurrences of word.
+     *
+     * @param word word to be counted
+     * @param count number of occurrences
+     */
+    public void add(String word, long count) {
+        int hash = word.hashCode();
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (entry < 0) {
+                insert(slot, word, hash, count);
+                return;
+            }
+            if (hashes[entry] == hash && words[entry].equals(word)) {
+                counts[entry] += count;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of distinct words
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Approximate heap size of counter, words are counted by average size of short word.
+     *
+     * @return size in bytes
+     */
+    public long estimateSize() {
+        return 64 + 4L * table.length + 20L * words.length + 48L * size;
+    }
+
+    /**
+     * @param index index of word in order of first occurrence
+     * @return word
+     */
+    public String word(int index) {
+        return words[index];
+    }
+
+    /**
+     * @param index index of word in order of first occurrence
+     * @return occurrences of word
+     */
+    public long count(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Order words by occurrences in descending order. Words with the same
+     * occurrences keep order of their first occurrence.
+     *
+     * @return word frequency in descending order
+     */
+    public LinkedHashMap<String, Long> sortedByFrequency() {
+        return topByFrequency(Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Select the most frequent words in descending order of occurrences. Words with
+     * the same occurrences keep order of their first occurrence. Only top words
+     * are kept in bounded heap, so the whole vocabulary is never sorted.
+     *
+     * @param top maximum number of words to be returned
+     * @param minCount minimum occurrences of word to be returned
+     * @return word frequency in descending order
+     */
+    public LinkedHashMap<String, Long> topByFrequency(int top, long minCount) {
+        long[] ranked;
+        int n = 0;
+
+        if (top >= size) {
+            ranked = new long[size];
+            for (int i = 0; i < size; i++) {
+                if (counts[i] >= minCount) {
+                    ranked[n++] = rank(i);
+                }
+            }
+        } else {
+            // max heap of the best ranks found so far, the worst one is at root
+            ranked = new long[top];
+            for (int i = 0; i < size && top > 0; i++) {
+                if (counts[i] < minCount) {
+                    continue;
+                }
+
+                long r = rank(i);
+                if (n < top) {
+                    ranked[n] = r;
+                    siftUp(ranked, n++);
+                } else if (r < ranked[0]) {
+                    ranked[0] = r;
+                    siftDown(ranked, n);
+                }
+            }
+        }
+        Arrays.sort(ranked, 0, n);
+
+        LinkedHashMap<String, Long> sorted = new LinkedHashMap<>(n * 4 / 3 + 1);
+        for (int j = 0; j < n; j++) {
+            int i = (int) ranked[j];
+            sorted.put(words[i], counts[i]);
+        }
+        return sorted;
+    }
+
+    /**
+     * Rank is packed together with index so that words can be ordered as primitive values.
+     * Lower rank means more occurrences.
+     *
+     * @param index index of word
+     * @return rank of word
+     */
+    private long rank(int index) {
+        return ((long) (Integer.MAX_VALUE - (int) Math.min(counts[index], Integer.MAX_VALUE)) << 32) | index;
+    }
+
+    private static void siftUp(long[] heap, int index) {
+        long value = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] >= value) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        long value = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (value >= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+
+    /**
+     * Store new word into slot of table. Grow table when it is half full.
+     */
+    private void insert(int slot, String word, int hash, long count) {
+        if (size == words.length) {
+            int capacity = words.length * 2;
+            words = Arrays.copyOf(words, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        words[size] = word;
+        hashes[size] = hash;
+        counts[size] = count;
+        table[slot] = ++size;
+
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+    }
+
+    /**
+     * @param capacity new size of table
+     */
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = spread(hashes[entry]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry + 1;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String word, char[] buffer, int offset, int length) {
+        if (word.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != buffer[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
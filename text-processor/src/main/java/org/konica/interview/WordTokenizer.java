@@ -0,0 +1,142 @@
+package org.konica.interview;
+
+import java.util.Arrays;
+
+/** Represents tokenizer of words
+ *
+ * Splits text into words the same way String.split("\\W+") does it for every
+ * paragraph, but without regular expressions and without creating strings.
+ * Words are passed to WordCounter as ranges of characters. Only word which
+ * crosses border of two chunks of text is copied.
+ *
+ * @see WordCounter
+ */
+public class WordTokenizer {
+    private static final char[] EMPTY = new char[0];
+
+    private final WordCounter counter;
+
+    private char[] carry;
+    private int carryLength;
+    private int wordStart;
+    private boolean inWord;
+    private boolean paragraphStart;
+    private boolean leadingSeparator;
+
+    /**
+     * @param counter counter which receives words
+     */
+    public WordTokenizer(WordCounter counter) {
+        this.counter = counter;
+        this.carry = new char[32];
+        this.carryLength = 0;
+        this.wordStart = -1;
+        this.inWord = false;
+        this.paragraphStart = true;
+        this.leadingSeparator = false;
+    }
+
+    /**
+     * Process character which is not paragraph separator.
+     *
+     * @param buffer chunk of text which contains character
+     * @param index index of character in chunk
+     * @param c character
+     */
+    public void next(char[] buffer, int index, char c) {
+        if (isWordChar(c)) {
+            if (wordStart < 0) {
+                wordStart = index;
+            }
+            inWord = true;
+            paragraphStart = false;
+            return;
+        }
+
+        // String.split yields leading empty word if paragraph starts with separator
+        if (paragraphStart) {
+            leadingSeparator = true;
+            paragraphStart = false;
+        }
+        endWord(buffer, index);
+    }
+
+    /**
+     * Process paragraph separator.
+     *
+     * @param buffer chunk of text which contains separator
+     * @param index index of separator in chunk
+     */
+    public void endParagraph(char[] buffer, int index) {
+        endWord(buffer, index);
+        paragraphStart = true;
+        leadingSeparator = false;
+    }
+
+    /**
+     * Has to be called when all characters of chunk were processed. Word which
+     * continues in next chunk is copied aside.
+     *
+     * @param buffer chunk of text
+     * @param end index after last processed character
+     */
+    public void endChunk(char[] buffer, int end) {
+        if (inWord && wordStart >= 0) {
+            appendCarry(buffer, wordStart, end);
+            wordStart = -1;
+        }
+    }
+
+    /**
+     * Count word which is being processed. Has to be called after last chunk of text.
+     */
+    public void finish() {
+        endParagraph(EMPTY, 0);
+    }
+
+    /**
+     * Count word which ends at index.
+     */
+    private void endWord(char[] buffer, int end) {
+        if (!inWord) {
+            return;
+        }
+
+        if (leadingSeparator) {
+            counter.add(EMPTY, 0, 0);
+            leadingSeparator = false;
+        }
+
+        if (carryLength == 0) {
+            counter.add(buffer, wordStart, end - wordStart);
+        } else {
+            if (wordStart >= 0) {
+                appendCarry(buffer, wordStart, end);
+            }
+            counter.add(carry, 0, carryLength);
+            carryLength = 0;
+        }
+
+        inWord = false;
+        wordStart = -1;
+    }
+
+    private void appendCarry(char[] buffer, int start, int end) {
+        int length = end - start;
+        if (carryLength + length > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + length));
+        }
+        System.arraycopy(buffer, start, carry, carryLength, length);
+        carryLength += length;
+    }
+
+    /**
+     * Equivalent of regex class \w
+     *
+     * @param c character
+     * @return true if character is a-z, A-Z, 0-9 or _
+     */
+    static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
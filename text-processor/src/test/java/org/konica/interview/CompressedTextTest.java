@@ -0,0 +1,53 @@
+package org.konica.interview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/** Represents test of compressed text
+ *
+ * Text has to be read back as it was compressed, truncated or corrupted
+ * compressed text has to fail instead of being read forever.
+ */
+public class CompressedTextTest {
+
+    private static String text() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("word").append(i).append(i % 10 == 0 ? "\n" : " ").append('\u017e');
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void roundTrip() {
+        String text = text();
+        assertEquals(text, CompressedText.compress(text).decompress());
+        assertEquals("", CompressedText.compress("").decompress());
+    }
+
+    @Test(timeout = 5000, expected = IllegalStateException.class)
+    public void truncated() {
+        CompressedText compressed = CompressedText.compress(text());
+        byte[] bytes = Arrays.copyOf(compressed.bytes(), compressed.bytes().length / 2);
+        new CompressedText(bytes, compressed.length()).decompress();
+    }
+
+    @Test(timeout = 5000, expected = IllegalStateException.class)
+    public void longerThanText() {
+        CompressedText compressed = CompressedText.compress(text());
+        new CompressedText(compressed.bytes(), compressed.length() + 1).decompress();
+    }
+
+    @Test(timeout = 5000, expected = IllegalStateException.class)
+    public void corrupted() {
+        CompressedText compressed = CompressedText.compress(text());
+        byte[] bytes = compressed.bytes().clone();
+        for (int i = 2; i < bytes.length; i += 7) {
+            bytes[i] ^= 0x5a;
+        }
+        new CompressedText(bytes, compressed.length()).decompress();
+    }
+}
@@ -0,0 +1,141 @@
+package org.konica.interview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Represents test of document cache used by many threads at once
+ *
+ * Threads store, read and delete documents of a small set of uuids while
+ * documents expire and are evicted. Cache has to return only documents stored
+ * under requested uuid, hand every document over to listener at most once and
+ * end empty with zero weight once all documents expired.
+ */
+public class DocumentCacheTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 20000;
+    private static final int UUIDS = 64;
+    private static final long TTL = 50;
+    private static final long TICK = 5;
+
+    private final Set<Document> handedOver = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger twice = new AtomicInteger();
+    private final AtomicInteger wrong = new AtomicInteger();
+
+    private DocumentCache cache(long maxWeight) {
+        return new DocumentCache(TTL, TICK, maxWeight, false, (uuid, document) -> {
+            if (!handedOver.add(document)) {
+                twice.incrementAndGet();
+            }
+            if (!uuid.toString().equals(document.text())) {
+                wrong.incrementAndGet();
+            }
+        });
+    }
+
+    private void run(DocumentCache cache) throws Exception {
+        UUID[] uuids = new UUID[UUIDS];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = UUID.randomUUID();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    UUID uuid = uuids[random.nextInt(uuids.length)];
+                    int operation = random.nextInt(10);
+                    if (operation < 3) {
+                        cache.store(uuid, new Document(uuid.toString()));
+                    } else if (operation < 9) {
+                        Document document = cache.get(uuid);
+                        if (document != null && !uuid.toString().equals(document.text())) {
+                            wrong.incrementAndGet();
+                        }
+                    } else {
+                        cache.delete(uuid);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(TTL);
+        }
+        cache.shutdown();
+
+        assertEquals(0, wrong.get());
+        assertEquals(0, twice.get());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    public void concurrentExpiry() throws Exception {
+        DocumentCache cache = cache(DocumentCache.DEFAULT_MAX_BYTES);
+        run(cache);
+        assertTrue(cache.getExpirations() > 0);
+    }
+
+    @Test
+    public void concurrentEviction() throws Exception {
+        // room for about a quarter of documents
+        DocumentCache cache = cache(UUIDS / 4 * new Document(UUID.randomUUID().toString()).estimateSize());
+        run(cache);
+        assertTrue(cache.getEvictions() > 0);
+    }
+
+    @Test
+    public void storeIfAbsentKeepsOneDocument() throws Exception {
+        DocumentCache cache = cache(DocumentCache.DEFAULT_MAX_BYTES);
+        UUID uuid = UUID.randomUUID();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Document>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return cache.storeIfAbsent(uuid, new Document(uuid.toString()));
+            }));
+        }
+
+        start.countDown();
+        Document cached = cache.get(uuid);
+        for (Future<Document> future : futures) {
+            Document document = future.get(10, TimeUnit.SECONDS);
+            cached = cached == null ? cache.get(uuid) : cached;
+            assertSame(cached, document);
+        }
+        executor.shutdown();
+        cache.shutdown();
+    }
+}
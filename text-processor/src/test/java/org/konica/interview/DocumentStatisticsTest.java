@@ -0,0 +1,110 @@
+package org.konica.interview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/** Represents test of statistics engine against split based implementation
+ *
+ * Expected values are computed the way Document computed them before statistics
+ * engine was introduced: content is split by "\n", empty paragraphs are removed
+ * and words of every paragraph are split by "\\W+".
+ */
+public class DocumentStatisticsTest {
+
+    private static ArrayList<String> splitParagraphs(String text) {
+        ArrayList<String> paragraphs = new ArrayList<>(Arrays.asList(text.split("\n")));
+        paragraphs.removeIf(String::isEmpty);
+        return paragraphs;
+    }
+
+    private static Map<String, Long> splitWords(String text) {
+        Map<String, Long> words = new HashMap<>();
+        for (String p : splitParagraphs(text)) {
+            for (String word : p.split("\\W+")) {
+                words.merge(word, 1L, Long::sum);
+            }
+        }
+        return words;
+    }
+
+    private static void assertSameAsSplit(String text) {
+        ArrayList<String> paragraphs = splitParagraphs(text);
+        Document document = new Document(text);
+        document.parseStatistics();
+
+        assertEquals("paragraph count of " + text, paragraphs.size(), (int) document.getParagraphCount());
+        if (!paragraphs.isEmpty()) {
+            int max = paragraphs.stream().mapToInt(String::length).max().getAsInt();
+            int min = paragraphs.stream().mapToInt(String::length).min().getAsInt();
+            int avg = paragraphs.stream().mapToInt(String::length).sum() / paragraphs.size();
+            assertEquals("max length of " + text, max, (int) document.getParagraphMaxLength());
+            assertEquals("min length of " + text, min, (int) document.getParagraphMinLength());
+            assertEquals("avg length of " + text, avg, (int) document.getParagraphAvgLength());
+        }
+        assertEquals("words of " + text, splitWords(text), new HashMap<>(document.getWordFrequency()));
+    }
+
+    @Test
+    public void emptyText() {
+        assertSameAsSplit("");
+        assertSameAsSplit("\n");
+        assertSameAsSplit("\n\n\n");
+
+        Document document = new Document("");
+        assertEquals(0, (int) document.parseParagraphAvgLength());
+        assertEquals(0, (int) document.parseParagraphMaxLength());
+        assertEquals(0, (int) document.parseParagraphMinLength());
+    }
+
+    @Test
+    public void leadingAndTrailingNonWordCharacters() {
+        assertSameAsSplit(", hello world.");
+        assertSameAsSplit("hello, world!!");
+        assertSameAsSplit("...");
+        assertSameAsSplit("  a  b  ");
+        assertSameAsSplit("-x\n-y-\n--\nz--");
+        assertSameAsSplit("__init__ a_b _ 1_2");
+    }
+
+    @Test
+    public void unicodeLettersAndDigits() {
+        assertSameAsSplit("\u017elu\u0165ou\u010dk\u00fd k\u016f\u0148 \u00fap\u011bl");
+        assertSameAsSplit("\u00e9t\u00e9 2019 caf\u00e9\n\u0661\u0662\u0663 abc123 123abc");
+        assertSameAsSplit("\u65e5\u672c\u8a9e text \u65e5\u672c\u8a9e");
+        assertSameAsSplit("\ud83d\ude00 emoji\ud83d\ude00emoji");
+    }
+
+    @Test
+    public void carriageReturnParagraphs() {
+        assertSameAsSplit("first paragraph\r\n\r\nsecond one\r\n\r\nthird\r\n");
+        assertSameAsSplit("\r\n\r\n");
+        assertSameAsSplit("a\rb\r\n\r\nc");
+    }
+
+    @Test
+    public void textFedInChunks() {
+        String text = "one two, three\n\nfour\r\nfive six\n\u00e9t\u00e9 seven";
+        for (int chunk = 1; chunk <= text.length(); chunk++) {
+            DocumentStatistics statistics = new DocumentStatistics(true);
+            char[] chars = text.toCharArray();
+            for (int i = 0; i < chars.length; i += chunk) {
+                statistics.accept(chars, i, Math.min(chunk, chars.length - i));
+            }
+            statistics.finish();
+
+            DocumentStatistics whole = new DocumentStatistics(true);
+            whole.accept(text);
+            whole.finish();
+
+            assertEquals(whole.getParagraphCount(), statistics.getParagraphCount());
+            assertEquals(whole.getParagraphLengthSum(), statistics.getParagraphLengthSum());
+            assertEquals(whole.getWordCounts().sortedByFrequency(), statistics.getWordCounts().sortedByFrequency());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.konica.interview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Represents test of appending text to document
+ *
+ * Statistics of document with appended chunks have to be the same as
+ * statistics of its whole text, whether its text was kept, compressed
+ * or dropped before text was appended.
+ */
+public class DocumentTest {
+
+    private static final String TEXT = "The quick brown fox\n\njumps over the lazy dog, the end.";
+    private static final String FIRST = "fox again\nand dog";
+    private static final String SECOND = "the end";
+
+    private static void assertSameStatistics(Document expected, Document actual) {
+        assertEquals(expected.parseParagraphCount(), actual.parseParagraphCount());
+        assertEquals(expected.parseParagraphMaxLength(), actual.parseParagraphMaxLength());
+        assertEquals(expected.parseParagraphMinLength(), actual.parseParagraphMinLength());
+        assertEquals(expected.parseParagraphAvgLength(), actual.parseParagraphAvgLength());
+        assertEquals(new ArrayList<>(expected.parseWordFrequency().entrySet()),
+                new ArrayList<>(actual.parseWordFrequency().entrySet()));
+    }
+
+    @Test
+    public void appendedChunks() {
+        Document document = new Document(TEXT);
+        document.append(FIRST);
+        document.append(SECOND);
+
+        assertEquals(2, document.version());
+        assertEquals(TEXT, document.baseText());
+        assertEquals(Arrays.asList("\n" + FIRST, "\n" + SECOND), document.appended(0));
+        assertEquals(Collections.singletonList("\n" + SECOND), document.appended(1));
+
+        String whole = TEXT + "\n" + FIRST + "\n" + SECOND;
+        assertEquals(whole, document.text());
+        assertSameStatistics(new Document(whole), document);
+        assertEquals(whole.length(), document.textLength());
+    }
+
+    @Test
+    public void appendedToCompressed() {
+        Document document = new Document(TEXT);
+        document.compress();
+        document.append(FIRST);
+
+        assertEquals(TEXT + "\n" + FIRST, document.text());
+        assertSameStatistics(new Document(TEXT + "\n" + FIRST), document);
+    }
+
+    @Test
+    public void appendedAfterTextWasDropped() {
+        Document document = new Document(TEXT);
+        document.append(FIRST);
+        document.parseStatistics();
+        document.markStored(document.version());
+        assertTrue(document.textStored());
+        assertTrue(document.dropText());
+        assertNull(document.text());
+
+        document.append(SECOND);
+        assertFalse(document.textStored());
+        assertEquals(2, document.version());
+        assertEquals(Collections.singletonList("\n" + SECOND), document.appended(1));
+        assertSameStatistics(new Document(TEXT + "\n" + FIRST + "\n" + SECOND), document);
+
+        document.markStored(2);
+        assertTrue(document.textStored());
+    }
+
+    @Test
+    public void storedOnlyUpToVersion() {
+        Document document = new Document(TEXT);
+        document.append(FIRST);
+        int version = document.version();
+        document.append(SECOND);
+
+        document.markStored(version);
+        assertFalse(document.textStored());
+        assertEquals(version, document.storedVersion());
+        assertEquals(Collections.singletonList("\n" + SECOND), document.appended(document.storedVersion()));
+    }
+
+    @Test
+    public void restoredChunks() {
+        Document document = new Document(TEXT);
+        document.restoreAppended(Arrays.asList("\n" + FIRST, "\n" + SECOND));
+
+        assertEquals(2, document.version());
+        assertSameStatistics(new Document(TEXT + "\n" + FIRST + "\n" + SECOND), document);
+    }
+
+    @Test
+    public void appendedToEmpty() {
+        Document document = new Document("");
+        document.append(FIRST);
+
+        assertEquals(FIRST, document.text());
+        assertSameStatistics(new Document(FIRST), document);
+    }
+}
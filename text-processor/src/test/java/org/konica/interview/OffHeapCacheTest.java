@@ -0,0 +1,86 @@
+package org.konica.interview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/** Represents test of off-heap cache
+ *
+ * Statistics read from off-heap cache, with or without content, have to be
+ * the same as statistics of stored document.
+ */
+public class OffHeapCacheTest {
+
+    private static final String TEXT = "The quick brown fox\n\njumps over the lazy dog, the end.\nfox \u017elu\u0165ou\u010dk\u00fd k\u016f\u0148\n";
+
+    private static void assertSameStatistics(Document expected, Document actual) {
+        assertEquals(expected.parseParagraphCount(), actual.parseParagraphCount());
+        assertEquals(expected.parseParagraphMaxLength(), actual.parseParagraphMaxLength());
+        assertEquals(expected.parseParagraphMinLength(), actual.parseParagraphMinLength());
+        assertEquals(expected.parseParagraphAvgLength(), actual.parseParagraphAvgLength());
+        assertEquals(new ArrayList<>(expected.parseWordFrequency().entrySet()),
+                new ArrayList<>(actual.parseWordFrequency().entrySet()));
+    }
+
+    @Test
+    public void statisticsWithoutContent() {
+        OffHeapCache cache = new OffHeapCache(1 << 16);
+        UUID uuid = UUID.randomUUID();
+        cache.put(uuid, new Document(TEXT));
+
+        Document statistics = cache.getStatistics(uuid, Integer.MAX_VALUE);
+        assertNull(statistics.text());
+        assertSameStatistics(new Document(TEXT), statistics);
+    }
+
+    @Test
+    public void documentWithContent() {
+        OffHeapCache cache = new OffHeapCache(1 << 16);
+        UUID uuid = UUID.randomUUID();
+        cache.put(uuid, new Document(TEXT));
+
+        Document document = cache.get(uuid);
+        assertEquals(TEXT, document.text());
+        assertSameStatistics(new Document(TEXT), document);
+
+        document.append("fox again");
+        Document appended = new Document(TEXT + "fox again");
+        assertSameStatistics(appended, document);
+    }
+
+    @Test
+    public void wordLimit() {
+        OffHeapCache cache = new OffHeapCache(1 << 16);
+        UUID uuid = UUID.randomUUID();
+        cache.put(uuid, new Document(TEXT));
+
+        Map<String, Long> words = cache.getStatistics(uuid, 2).parseWordFrequency();
+        assertEquals(2, words.size());
+        assertEquals(new ArrayList<>(new Document(TEXT).parseWordFrequency().entrySet()).subList(0, 2),
+                new ArrayList<>(words.entrySet()));
+    }
+
+    @Test
+    public void overwrittenDocumentsAreEvicted() {
+        OffHeapCache cache = new OffHeapCache(1024);
+        UUID first = UUID.randomUUID();
+        cache.put(first, new Document(TEXT));
+
+        UUID last = null;
+        for (int i = 0; i < 20; i++) {
+            last = UUID.randomUUID();
+            cache.put(last, new Document(TEXT + i));
+        }
+
+        assertNull(cache.getStatistics(first, Integer.MAX_VALUE));
+        assertNull(cache.get(first));
+        assertNotNull(cache.get(last));
+        assertSameStatistics(new Document(TEXT + 19), cache.getStatistics(last, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,110 @@
+package org.konica.interview;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/** Represents test of statistics computed in parallel
+ *
+ * Threshold and parts are forced small, so that texts of a few characters are
+ * split and middle of a part falls inside a word, inside "\n\n" and next to the
+ * end of a part. Result has to be the same as sequential DocumentStatistics.
+ */
+public class ParallelStatisticsTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Before
+    public void lowerThreshold() {
+        ParallelStatistics.setThreshold(1);
+    }
+
+    @After
+    public void restoreThreshold() {
+        ParallelStatistics.setThreshold(ParallelStatistics.DEFAULT_THRESHOLD);
+    }
+
+    private static DocumentStatistics sequential(String text) {
+        DocumentStatistics statistics = new DocumentStatistics(true);
+        statistics.accept(text);
+        statistics.finish();
+        return statistics;
+    }
+
+    private static void assertSameAsSequential(String text, int part) {
+        DocumentStatistics expected = sequential(text);
+        DocumentStatistics actual = ParallelStatistics.compute(text, true, pool, part);
+        String message = "part " + part + " of " + text.replace("\n", "\\n");
+
+        assertEquals(message, expected.getParagraphCount(), actual.getParagraphCount());
+        assertEquals(message, expected.getParagraphMaxLength(), actual.getParagraphMaxLength());
+        assertEquals(message, expected.getParagraphMinLength(), actual.getParagraphMinLength());
+        assertEquals(message, expected.getParagraphAvgLength(), actual.getParagraphAvgLength());
+        assertEquals(message, expected.getParagraphLengthSum(), actual.getParagraphLengthSum());
+        assertEquals(message, expected.getLength(), actual.getLength());
+
+        WordCounter expectedWords = expected.getWordCounts();
+        WordCounter actualWords = actual.getWordCounts();
+        assertEquals(message, expectedWords.size(), actualWords.size());
+        for (int i = 0; i < expectedWords.size(); i++) {
+            assertEquals(message, expectedWords.word(i), actualWords.word(i));
+            assertEquals(message, expectedWords.count(i), actualWords.count(i));
+        }
+    }
+
+    @Test
+    public void middleInsideWord() {
+        assertSameAsSequential("one\ntwo threefourfive six\nseven", 8);
+        assertSameAsSequential("alpha\nbetagammadelta\nalpha", 4);
+    }
+
+    @Test
+    public void middleInsideEmptyLines() {
+        assertSameAsSequential("one two\n\nthree four", 4);
+        assertSameAsSequential("a\n\n\n\nb\n\nc\n", 2);
+        assertSameAsSequential("\n\nword\n\n", 1);
+    }
+
+    @Test
+    public void textEndsWithLineBreak() {
+        assertSameAsSequential("ab\n", 1);
+        assertSameAsSequential("a\nb\n", 1);
+        assertSameAsSequential("a b\nc d\n\n", 2);
+    }
+
+    @Test
+    public void textWithoutLineBreak() {
+        assertSameAsSequential("one two three", 1);
+        assertSameAsSequential("", 1);
+    }
+
+    @Test
+    public void randomTexts() {
+        char[] alphabet = {'a', 'b', 'c', ' ', ' ', ',', '\n', '\n', '\r', '\u00e9', '1'};
+        Random random = new Random(17);
+        for (int n = 0; n < 2000; n++) {
+            char[] text = new char[random.nextInt(200)];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            assertSameAsSequential(new String(text), 1 + random.nextInt(40));
+        }
+    }
+}
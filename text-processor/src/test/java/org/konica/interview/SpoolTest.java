@@ -0,0 +1,73 @@
+package org.konica.interview;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Represents test of spool of uploads
+ *
+ * Spooled bytes have to be read back the same whether they are held in heap
+ * or in temporary file, and upload longer than limit has to be read whole
+ * from spool followed by the rest of its stream.
+ */
+public class SpoolTest {
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            output.write(buffer, 0, n);
+        }
+        input.close();
+        return output.toByteArray();
+    }
+
+    @Test
+    public void heldInHeap() throws IOException {
+        byte[] upload = bytes(5000);
+        try (Spool spool = new Spool(64 * 1024)) {
+            assertTrue(spool.readFrom(new ByteArrayInputStream(upload), upload.length));
+            assertEquals(upload.length, spool.length());
+            assertArrayEquals(upload, readAll(spool.open()));
+        }
+    }
+
+    @Test
+    public void writtenToFile() throws IOException {
+        byte[] upload = bytes(300000);
+        try (Spool spool = new Spool(64 * 1024)) {
+            assertTrue(spool.readFrom(new ByteArrayInputStream(upload), upload.length));
+            assertArrayEquals(upload, readAll(spool.open()));
+            // spool can be read again
+            assertArrayEquals(upload, readAll(spool.open()));
+        }
+    }
+
+    @Test
+    public void longerThanLimit() throws IOException {
+        byte[] upload = bytes(300000);
+        InputStream body = new ByteArrayInputStream(upload);
+        try (Spool spool = new Spool(64 * 1024)) {
+            assertFalse(spool.readFrom(body, 100000));
+            assertTrue(spool.length() > 100000 && spool.length() < upload.length);
+            assertArrayEquals(upload, readAll(new SequenceInputStream(spool.open(), body)));
+        }
+    }
+}
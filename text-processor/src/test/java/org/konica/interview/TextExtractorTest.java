@@ -0,0 +1,163 @@
+package org.konica.interview;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** Represents test of text extractor against stub of Tika
+ *
+ * Stub runs in the same process and answers every document by its own bytes
+ * as if they were plain text output of Tika, it can delay its answer or answer
+ * by error. Remote ports of requests tell whether connections were reused.
+ */
+public class TextExtractorTest {
+
+    private static final String TIKA_OUTPUT = "The quick brown fox\n\njumps over the lazy dog\n";
+    private static final String TEXT = "The quick brown fox\njumps over the lazy dog";
+
+    private HttpServer server;
+    private Set<Integer> remotePorts;
+    private volatile long delay;
+    private volatile int status;
+    private volatile CountDownLatch release;
+
+    @Before
+    public void setUp() throws IOException {
+        remotePorts = Collections.synchronizedSet(new HashSet<>());
+        status = 200;
+        release = new CountDownLatch(0);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/tika", exchange -> {
+            remotePorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = readAll(exchange.getRequestBody());
+            try {
+                Thread.sleep(delay);
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/tika";
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            output.write(buffer, 0, n);
+        }
+        return output.toByteArray();
+    }
+
+    private static InputStream document() {
+        return new ByteArrayInputStream(TIKA_OUTPUT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void extractsText() throws IOException {
+        TextExtractor extractor = new TextExtractor(url());
+        assertEquals(TEXT, extractor.streamToText(document()));
+
+        DocumentStatistics statistics = extractor.streamToStatistics(document(), new DocumentStatistics(true));
+        statistics.finish();
+        assertEquals(2, statistics.getParagraphCount());
+    }
+
+    @Test
+    public void reusesConnection() throws IOException {
+        TextExtractor extractor = new TextExtractor(url());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(TEXT, extractor.streamToText(document()));
+        }
+        assertEquals(1, remotePorts.size());
+    }
+
+    @Test
+    public void errorStatus() throws IOException {
+        TextExtractor extractor = new TextExtractor(url());
+        status = 500;
+        try {
+            extractor.streamToText(document());
+            fail("Error of Tika has to fail extraction");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("500"));
+        }
+
+        // connection whose error response was drained is reused
+        status = 200;
+        assertEquals(TEXT, extractor.streamToText(document()));
+        assertEquals(1, remotePorts.size());
+    }
+
+    @Test
+    public void readTimeout() throws IOException {
+        TextExtractor extractor = new TextExtractor(url(), 1, 0, 1000, 200);
+        delay = 2000;
+
+        long start = System.nanoTime();
+        try {
+            extractor.streamToText(document());
+            fail("Slow Tika has to time out");
+        } catch (IOException e) {
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500);
+        }
+    }
+
+    @Test
+    public void rejectsWhenFull() throws Exception {
+        TextExtractor extractor = new TextExtractor(url(), 1, 0, 1000, 10000);
+        release = new CountDownLatch(1);
+
+        CompletableFuture<String> first = extractor.streamToTextAsync(document());
+        CompletableFuture<String> second = extractor.streamToTextAsync(document());
+        try {
+            second.join();
+            fail("Extraction which does not fit has to be rejected");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        release.countDown();
+        assertEquals(TEXT, first.get(5, TimeUnit.SECONDS));
+    }
+}
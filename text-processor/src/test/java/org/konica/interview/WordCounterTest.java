@@ -0,0 +1,109 @@
+package org.konica.interview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/** Represents test of selection of the most frequent words
+ *
+ * Words selected by bounded heap have to be the same and in the same order as
+ * the first words of full sort which pass minCount.
+ */
+public class WordCounterTest {
+
+    private static WordCounter count(long... counts) {
+        WordCounter counter = new WordCounter();
+        for (int i = 0; i < counts.length; i++) {
+            counter.add("w" + i, counts[i]);
+        }
+        return counter;
+    }
+
+    private static LinkedHashMap<String, Long> expected(WordCounter counter, int top, long minCount) {
+        LinkedHashMap<String, Long> selected = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : counter.sortedByFrequency().entrySet()) {
+            if (selected.size() >= top) {
+                break;
+            }
+            if (e.getValue() >= minCount) {
+                selected.put(e.getKey(), e.getValue());
+            }
+        }
+        return selected;
+    }
+
+    private static void assertTop(WordCounter counter, int top, long minCount) {
+        assertEquals("top " + top + ", minCount " + minCount,
+                new ArrayList<>(expected(counter, top, minCount).entrySet()),
+                new ArrayList<>(counter.topByFrequency(top, minCount).entrySet()));
+    }
+
+    @Test
+    public void fullSortKeepsFirstOccurrenceOfTies() {
+        WordCounter counter = count(1, 3, 2, 3, 1, 2);
+        assertEquals(new ArrayList<>(Arrays.asList("w1", "w3", "w2", "w5", "w0", "w4")),
+                new ArrayList<>(counter.sortedByFrequency().keySet()));
+    }
+
+    @Test
+    public void tiesAtCutoff() {
+        WordCounter counter = count(5, 3, 3, 3, 1, 3, 5);
+        for (int top = 0; top <= 8; top++) {
+            assertTop(counter, top, 0);
+        }
+        // w1, w2, w3 and w5 tie at cutoff, the first of them win
+        assertEquals(new ArrayList<>(Arrays.asList("w0", "w6", "w1")),
+                new ArrayList<>(counter.topByFrequency(3, 1).keySet()));
+    }
+
+    @Test
+    public void minCountFiltering() {
+        WordCounter counter = count(4, 1, 2, 2, 7, 1, 3);
+        for (int top = 0; top <= 8; top++) {
+            for (long minCount = 0; minCount <= 8; minCount++) {
+                assertTop(counter, top, minCount);
+            }
+        }
+    }
+
+    @Test
+    public void randomCounts() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            long[] counts = new long[random.nextInt(300)];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = 1 + random.nextInt(1 + random.nextInt(20));
+            }
+            WordCounter counter = count(counts);
+            int top = random.nextInt(counts.length + 2);
+            long minCount = random.nextInt(4);
+            assertTop(counter, top, minCount);
+        }
+    }
+
+    @Test
+    public void documentSelectsSameWordsFromStatisticsAndFromDerivedFrequency() {
+        String text = "b a c a b d e d f a g h b c\nx y z x y z\n";
+        DocumentStatistics statistics = new DocumentStatistics(true);
+        statistics.accept(text);
+        statistics.finish();
+
+        Document derived = new Document(text);
+        derived.parseStatistics();
+
+        for (int top = 0; top <= 12; top++) {
+            for (long minCount = 0; minCount <= 4; minCount++) {
+                List<Map.Entry<String, Long>> fromStatistics =
+                        new ArrayList<>(new Document(statistics).parseWordFrequency(top, minCount).entrySet());
+                assertEquals(fromStatistics, new ArrayList<>(derived.parseWordFrequency(top, minCount).entrySet()));
+            }
+        }
+    }
+}